@@ -0,0 +1,147 @@
+package com.myuanxi;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+// 本地的 OpenAI 兼容 chat/completions 服务，响应体预先生成，只模拟固定延迟
+// 请求体中包含 ARRAY_MARKER 时返回 {"items":[...]}，否则返回单个对象；请求声明接受 gzip 时返回预先压缩的响应体
+public final class AiStubServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 18765;
+    public static final String ARRAY_MARKER = "[array]";
+
+    private static final byte[] ARRAY_MARKER_BYTES = ARRAY_MARKER.getBytes(StandardCharsets.UTF_8);
+
+    static {
+        // 关闭 Nagle 算法，否则小响应会被延迟确认拖慢约 40ms；必须在 HttpServer 初始化前设置
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final byte[] singleResponse;
+    private final byte[] arrayResponse;
+    private final byte[] gzipSingleResponse;
+    private final byte[] gzipArrayResponse;
+
+    public AiStubServer(int port, long latencyMillis, int arrayItems) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.singleResponse = AiStubTransport.chatCompletion(entityJson(0)).getBytes(StandardCharsets.UTF_8);
+        this.arrayResponse = AiStubTransport.chatCompletion(arrayJson(arrayItems)).getBytes(StandardCharsets.UTF_8);
+        this.gzipSingleResponse = gzip(singleResponse);
+        this.gzipArrayResponse = gzip(arrayResponse);
+        // 延迟用 sleep 模拟，每个请求占用一个线程，避免排队影响测得的并发
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ai-stub-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    // port 为 0 时由系统分配端口
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + getPort() + "/v1/chat/completions";
+    }
+
+    public static String entityJson(int index) {
+        return "{\"name\":\"张三" + index + "\",\"age\":" + (20 + index % 60)
+                + ",\"occupation\":\"工程师\",\"description\":\"负责后端服务的设计与性能优化，喜欢\\\"长跑\\\"和摄影\""
+                + ",\"active\":true,\"score\":" + (60 + index % 40) + ".5"
+                + ",\"tags\":[\"java\",\"backend\",\"performance\"]}";
+    }
+
+    public static String arrayJson(int items) {
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(entityJson(i));
+        }
+        return json.append("]}").toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            boolean array = contains(body, ARRAY_MARKER_BYTES);
+            byte[] response = array ? arrayResponse : singleResponse;
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                response = array ? gzipArrayResponse : gzipSingleResponse;
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static boolean contains(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // 单独启动：java -cp benchmarks/target/benchmarks.jar com.myuanxi.AiStubServer [port] [latencyMillis] [arrayItems]
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        int items = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        new AiStubServer(port, latency, items);
+        System.out.println("AiStubServer listening on http://127.0.0.1:" + port + "/v1/chat/completions");
+    }
+}
@@ -0,0 +1,89 @@
+package com.myuanxi;
+
+import java.util.List;
+
+// 基准测试使用的实体，URL 指向本地的 AiStubServer
+@AiEntity(
+    model = "bench-model",
+    url = "http://127.0.0.1:18765/v1/chat/completions",
+    apikey = "bench",
+    responseFormat = AiEntity.ResponseFormat.JSON_SCHEMA
+)
+public class BenchPerson {
+    @AiField(description = "人的名字，2-4个汉字")
+    private String name;
+
+    @AiField(description = "年龄，范围在18-100之间")
+    private int age;
+
+    @AiField(description = "职业描述，例如：工程师、医生、教师等")
+    private String occupation;
+
+    @AiField(description = "一句话的人物简介")
+    private String description;
+
+    @AiField(description = "是否在职")
+    private boolean active;
+
+    @AiField(description = "综合评分，0-100")
+    private double score;
+
+    @AiField(description = "标签列表")
+    private List<String> tags;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public void setAge(int age) {
+        this.age = age;
+    }
+
+    public String getOccupation() {
+        return occupation;
+    }
+
+    public void setOccupation(String occupation) {
+        this.occupation = occupation;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+}
@@ -0,0 +1,106 @@
+package com.myuanxi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 端到端吞吐：经由本地 AiStubServer 走完整的 HTTP 请求、调度和解析，每次调用发出 BATCH 个请求
+// transport=replay 时先经由 AiStubServer 录制一次磁带，测量时从磁带回放，不经过网络
+// 分配率用 -prof gc 查看（gc.alloc.rate.norm 为每个请求的分配字节数）
+// -p compression=true 时请求声明 Accept-Encoding，AiStubServer 返回 gzip 压缩的响应体
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    private static final int BATCH = 64;
+
+    @Param({"1", "8", "64"})
+    public int concurrency;
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    @Param({"10"})
+    public int arrayItems;
+
+    @Param({"http", "replay"})
+    public String transport;
+
+    @Param({"false"})
+    public boolean compression;
+
+    private AiStubServer server;
+    private Path cassette;
+    private List<String> singleInputs;
+    private List<String> arrayInputs;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new AiStubServer(AiStubServer.DEFAULT_PORT, latencyMillis, arrayItems);
+        AiEntityClient.setResponseCompression(compression);
+        // 默认不启用响应缓存和微批处理，每个输入都会真正发出一次请求
+        singleInputs = new ArrayList<>(BATCH);
+        arrayInputs = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            singleInputs.add("创建一个名为张三的人，年龄30岁，职业是工程师 #" + i);
+            arrayInputs.add(AiStubServer.ARRAY_MARKER + " 创建" + arrayItems + "个人 #" + i);
+        }
+
+        if ("replay".equals(transport)) {
+            cassette = Files.createTempFile("ai-bench", ".cassette");
+            Files.delete(cassette);
+            try (AiCassetteTransport recorder = AiCassetteTransport.record(cassette, AiHttpTransport.getShared())) {
+                AiEntityClient.setDefaultTransport(recorder);
+                createByString();
+                createArrayByString();
+            }
+            // 回放时用服务端延迟模拟接口耗时
+            AiEntityClient.setDefaultTransport(AiCassetteTransport.replay(cassette, Duration.ofMillis(latencyMillis)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+        AiEntityClient.setDefaultTransport(null);
+        AiEntityClient.setResponseCompression(true);
+        if (cassette != null) {
+            Files.deleteIfExists(cassette);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<AiResult<BenchPerson>> createByString() {
+        return BenchPersonAiFactory.createAll(singleInputs, concurrency);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<AiResult<BenchPerson[]>> createArrayByString() {
+        return AiConcurrency.mapInOrder(arrayInputs, concurrency, BenchPersonAiFactory::createArrayByString);
+    }
+}
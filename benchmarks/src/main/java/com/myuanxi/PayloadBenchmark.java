@@ -0,0 +1,76 @@
+package com.myuanxi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// 提示词和请求体的构造：legacy 为最初生成代码的做法（运行时拼提示词 + String.format），current 为编译期前后缀 + 流式转义
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadBenchmark {
+
+    @Param({"short", "long"})
+    public String inputSize;
+
+    private String input;
+
+    @Setup
+    public void setup() {
+        String sentence = "创建一个名为\"张三\"的人，年龄30岁，职业是工程师。";
+        input = "short".equals(inputSize) ? sentence : sentence.repeat(200);
+    }
+
+    @Benchmark
+    public byte[] legacy() {
+        String systemPrompt = legacySystemPrompt();
+        String payload = String.format(
+                "{\"model\": \"%s\", \"messages\": [{\"role\": \"system\", \"content\": \"%s\"}, "
+                        + "{\"role\": \"user\", \"content\": \"%s\"}], "
+                        + "\"response_format\": {\"type\": \"json_object\"}, \"temperature\": 0.7}",
+                "bench-model",
+                systemPrompt.replace("\"", "\\\""),
+                input.replace("\"", "\\\""));
+        // HttpRequest.BodyPublishers.ofString 同样会把字符串编码为 UTF-8 字节
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] current() {
+        return BenchPersonAiFactory.client().requestBody(input);
+    }
+
+    private static String legacySystemPrompt() {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("You are a JSON generator for the BenchPerson class. ");
+        prompt.append("Generate valid JSON for the following fields: ");
+        prompt.append("name (java.lang.String): 人的名字，2-4个汉字");
+        prompt.append(", ");
+        prompt.append("age (int): 年龄，范围在18-100之间");
+        prompt.append(", ");
+        prompt.append("occupation (java.lang.String): 职业描述，例如：工程师、医生、教师等");
+        prompt.append(", ");
+        prompt.append("description (java.lang.String): 一句话的人物简介");
+        prompt.append(", ");
+        prompt.append("active (boolean): 是否在职");
+        prompt.append(", ");
+        prompt.append("score (double): 综合评分，0-100");
+        prompt.append(", ");
+        prompt.append("tags (java.util.List<java.lang.String>): 标签列表");
+        return prompt.toString();
+    }
+}
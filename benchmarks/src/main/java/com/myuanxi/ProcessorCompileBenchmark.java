@@ -0,0 +1,155 @@
+package com.myuanxi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// 编译期开销：对包含 entities 个 @AiEntity 类的合成项目，在进程内运行 javac + AiEntityProcessor
+// processOnly 只运行注解处理（-proc:only），fullCompile 同时编译实体和生成的工厂类
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessorCompileBenchmark {
+
+    private static final String PACKAGE = "com.myuanxi.bench.gen";
+
+    @Param({"500"})
+    public int entities;
+
+    private Path sourceDir;
+    private Path outputDir;
+    private List<Path> sources;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        sourceDir = Files.createTempDirectory("ai-bench-src");
+        Path packageDir = Files.createDirectories(sourceDir.resolve(PACKAGE.replace('.', '/')));
+        sources = new ArrayList<>(entities);
+        for (int i = 0; i < entities; i++) {
+            Path source = packageDir.resolve("Entity" + i + ".java");
+            Files.writeString(source, entitySource(i), StandardCharsets.UTF_8);
+            sources.add(source);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void cleanOutput() throws IOException {
+        if (outputDir != null) {
+            delete(outputDir);
+        }
+        outputDir = Files.createTempDirectory("ai-bench-out");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        delete(outputDir);
+        delete(sourceDir);
+    }
+
+    @Benchmark
+    public boolean processOnly() throws IOException {
+        return compile("-proc:only");
+    }
+
+    @Benchmark
+    public boolean fullCompile() throws IOException {
+        return compile(null);
+    }
+
+    // procOption 为 null 时使用 javac 默认行为：先运行注解处理，再编译全部源文件
+    private boolean compile(String procOption) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = new ArrayList<>(List.of(
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-d", Files.createDirectories(outputDir.resolve("classes")).toString(),
+                    "-s", Files.createDirectories(outputDir.resolve("generated")).toString(),
+                    "-implicit:none",
+                    "-nowarn"));
+            if (procOption != null) {
+                options.add(procOption);
+            }
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjectsFromPaths(sources));
+            task.setProcessors(List.of(new AiEntityProcessor()));
+            if (!task.call()) {
+                throw new IllegalStateException("Compilation failed: " + diagnostics.getDiagnostics());
+            }
+            return true;
+        }
+    }
+
+    private static String entitySource(int index) {
+        String name = "Entity" + index;
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(PACKAGE).append(";\n\n");
+        source.append("import com.myuanxi.AiEntity;\n");
+        source.append("import com.myuanxi.AiField;\n");
+        source.append("import java.util.List;\n\n");
+        source.append("@AiEntity(model = \"bench-model\", url = \"http://127.0.0.1:18765/v1/chat/completions\", apikey = \"bench\",\n");
+        source.append("        responseFormat = AiEntity.ResponseFormat.JSON_SCHEMA)\n");
+        source.append("public class ").append(name).append(" {\n");
+        String[][] fields = {
+                {"String", "name", "名称"},
+                {"int", "age", "年龄"},
+                {"String", "occupation", "职业"},
+                {"String", "description", "简介"},
+                {"boolean", "active", "是否在职"},
+                {"double", "score", "评分"},
+                {"Long", "version", "版本号"},
+                {"List<String>", "tags", "标签列表"},
+        };
+        for (String[] field : fields) {
+            source.append("    @AiField(description = \"").append(field[2]).append("\")\n");
+            source.append("    private ").append(field[0]).append(' ').append(field[1]).append(";\n");
+        }
+        for (String[] field : fields) {
+            String property = Character.toUpperCase(field[1].charAt(0)) + field[1].substring(1);
+            source.append("\n    public ").append(field[0]).append(" get").append(property).append("() {\n");
+            source.append("        return ").append(field[1]).append(";\n    }\n");
+            source.append("\n    public void set").append(property).append('(').append(field[0]).append(' ').append(field[1]).append(") {\n");
+            source.append("        this.").append(field[1]).append(" = ").append(field[1]).append(";\n    }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    private static void delete(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// 响应解析：legacy 为 readTree 取 content 后再用 Jackson 反射绑定，current 为流式读取 content + 生成的 reader
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseParsingBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"10", "100"})
+    public int arrayItems;
+
+    private String singleResponse;
+    private String arrayResponse;
+
+    @Setup
+    public void setup() {
+        singleResponse = AiStubTransport.chatCompletion(AiStubServer.entityJson(0));
+        arrayResponse = AiStubTransport.chatCompletion(AiStubServer.arrayJson(arrayItems));
+    }
+
+    @Benchmark
+    public BenchPerson legacySingle() throws IOException {
+        return MAPPER.readValue(legacyContent(singleResponse), BenchPerson.class);
+    }
+
+    @Benchmark
+    public BenchPerson currentSingle() throws IOException {
+        return BenchPersonAiFactory.client().parse(currentContent(singleResponse));
+    }
+
+    @Benchmark
+    public BenchPerson[] legacyArray() throws IOException {
+        JsonNode items = MAPPER.readTree(legacyContent(arrayResponse)).get("items");
+        return MAPPER.treeToValue(items, BenchPerson[].class);
+    }
+
+    @Benchmark
+    public BenchPerson[] currentArray() throws IOException {
+        return BenchPersonAiFactory.client().parseArray(currentContent(arrayResponse));
+    }
+
+    private static String legacyContent(String responseBody) throws IOException {
+        JsonNode rootNode = MAPPER.readTree(responseBody);
+        return rootNode.get("choices").get(0).get("message").get("content").asText();
+    }
+
+    private static String currentContent(String responseBody) throws IOException {
+        try (JsonParser parser = AiEntityClient.mapper().createParser(responseBody)) {
+            return AiJsonReaders.readContent(parser);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.myuanxi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 多地址路由：三个本地 AiStubServer，其中第一个的延迟是 degradedLatencyMillis，模拟变慢的服务商
+// policy=SINGLE 时只使用变慢的地址，其余两种策略在三个地址之间路由
+// 每次调用完成 BATCH 个请求，整批耗时取决于最慢的请求，可以看出慢地址对尾延迟的影响
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoutingBenchmark {
+
+    private static final int BATCH = 64;
+    private static final int CONCURRENCY = 16;
+
+    @Param({"SINGLE", "LEAST_OUTSTANDING", "EWMA"})
+    public String policy;
+
+    @Param({"5"})
+    public long latencyMillis;
+
+    @Param({"100"})
+    public long degradedLatencyMillis;
+
+    private final List<AiStubServer> servers = new ArrayList<>();
+    private List<String> inputs;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<AiEndpoint> endpoints = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int port = AiStubServer.DEFAULT_PORT + 1 + i;
+            servers.add(new AiStubServer(port, i == 0 ? degradedLatencyMillis : latencyMillis, 10));
+            endpoints.add(AiEndpoint.of("http://127.0.0.1:" + port + "/v1/chat/completions", "bench", null));
+        }
+        AiEndpointRouter router = "SINGLE".equals(policy)
+                ? AiEndpointRouter.of(AiEndpointRouter.Policy.LEAST_OUTSTANDING, endpoints.get(0))
+                : AiEndpointRouter.of(AiEndpointRouter.Policy.valueOf(policy), endpoints);
+        BenchPersonAiFactory.setRouter(router);
+
+        inputs = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            inputs.add("创建一个名为张三的人，年龄30岁，职业是工程师 #" + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchPersonAiFactory.setRouter(null);
+        servers.forEach(AiStubServer::close);
+        servers.clear();
+    }
+
+    @Benchmark
+    public List<AiResult<BenchPerson>> createByString() {
+        return BenchPersonAiFactory.createAll(inputs, CONCURRENCY);
+    }
+}
@@ -6,13 +6,13 @@ import com.myuanxi.AiField;
 @AiEntity(
     model = "${OPENAI_MODEL:gpt-3.5-turbo}",
     url = "${OPENAI_API_URL:https://api.openai.com/v1/chat/completions}",
-    apiKey = "${OPENAI_API_KEY}"
+    apikey = "${OPENAI_API_KEY}"
 )
 public class Person {
-    @AiField(description = "人的名字，2-4个汉字")
+    @AiField(description = "人的名字，2-4个汉字", minLength = 2, maxLength = 4, required = true)
     private String name;
     
-    @AiField(description = "年龄，范围在18-100之间")
+    @AiField(description = "年龄，范围在18-100之间", min = 18, max = 100)
     private int age;
     
     @AiField(description = "职业描述，例如：工程师、医生、教师等")
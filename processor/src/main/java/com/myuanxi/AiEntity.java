@@ -1,11 +0,0 @@
-package com.myuanxi;
-
-import java.lang.annotation.*;
-
-@Target(ElementType.TYPE)
-@Retention(RetentionPolicy.SOURCE)
-public @interface AiEntity {
-    String model();
-    String url();
-    String apikey();
-}
\ No newline at end of file
@@ -6,7 +6,9 @@ import com.google.auto.service.AutoService;
 import javax.annotation.processing.*;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 import java.io.Writer;
 import java.io.IOException;
@@ -19,14 +21,26 @@ import java.util.stream.Collectors;
 public class AiEntityProcessor extends AbstractProcessor {
     
     private static final String INDENT = "    ";
+    private static final String TEMPERATURE = "0.7";
+    // 运行时库所在的包，生成的工厂从这里导入 AiEntityClient 等类型
+    private static final String RUNTIME_PACKAGE = "com.myuanxi";
+
+    // 本次编译中已经生成过的工厂类，避免多轮处理时重复创建同一个文件
+    private final Set<String> generated = new HashSet<>();
     
+    // 聚合式增量处理器（见 META-INF/gradle/incremental.annotation.processors）：
+    // 工厂类不只依赖实体类自身，JSON Schema 的 $defs 会递归读取字段引用的嵌套类型和枚举常量，
+    // 这些类型变化时实体类本身不一定重新编译，因此不能声明为隔离式；
+    // Gradle 每次增量构建都把所有带注解的实体（包括未修改的，从 class 文件读取）重新交给处理器并重新编译生成的工厂类
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
         for (Element element : roundEnv.getElementsAnnotatedWith(AiEntity.class)) {
             if (element.getKind() != ElementKind.CLASS) continue;
             
             TypeElement classElement = (TypeElement) element;
-            processClass(classElement);
+            if (generated.add(classElement.getQualifiedName().toString())) {
+                processClass(classElement);
+            }
         }
         return true;
     }
@@ -46,40 +60,254 @@ public class AiEntityProcessor extends AbstractProcessor {
             // 分析类的字段
             List<FieldInfo> fields = analyzeFields(classElement);
             
+            boolean generateReader = canGenerateReader(classElement, fields);
+            
             // 生成工厂类
-            generateFactoryClass(packageName, className, factoryClassName, config, fields);
+            generateFactoryClass(classElement, packageName, className, factoryClassName, config, fields, generateReader);
             
         } catch (Exception e) {
             // 使用 Messager 报告错误
-            processingEnv.getMessager().printError("Failed to process class: " + classElement + ". Error: " + e.getMessage());
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to process class: " + classElement + ". Error: " + e.getMessage());
         }
     }
     
     private List<FieldInfo> analyzeFields(TypeElement classElement) {
-        return classElement.getEnclosedElements().stream()
-                .filter(element -> element.getKind() == ElementKind.FIELD)
-                .map(element -> {
-                    VariableElement field = (VariableElement) element;
-                    AiField aiField = field.getAnnotation(AiField.class);
-                    String description = aiField != null ? aiField.description() : "";
-                    return new FieldInfo(
-                            field.getSimpleName().toString(),
-                            field.asType().toString(),
-                            description
-                    );
-                })
-                .collect(Collectors.toList());
+        List<VariableElement> elements = AiJsonSchemaGenerator.fields(classElement);
+        List<FieldInfo> fields = new ArrayList<>(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            VariableElement field = elements.get(i);
+            AiField aiField = field.getAnnotation(AiField.class);
+            String description = aiField != null ? aiField.description() : "";
+            String name = field.getSimpleName().toString();
+            fields.add(new FieldInfo(
+                    name,
+                    field.asType().toString(),
+                    description,
+                    readExpression(field),
+                    assignment(classElement, field),
+                    accessor(classElement, field),
+                    rules(field, aiField),
+                    aiField != null ? aiField.pattern() : "",
+                    invalidCondition(classElement, field, aiField, i)
+            ));
+        }
+        return fields;
+    }
+
+    // 写入提示的约束说明，没有约束时为空字符串
+    private String rules(VariableElement field, AiField aiField) {
+        if (aiField == null) {
+            return "";
+        }
+        AiJsonSchemaGenerator.ValueKind kind = AiJsonSchemaGenerator.valueKind(field.asType(), processingEnv);
+        List<String> rules = new ArrayList<>();
+        if (aiField.required()) {
+            rules.add("required");
+        }
+        if (kind == AiJsonSchemaGenerator.ValueKind.NUMBER) {
+            if (!Double.isInfinite(aiField.min())) {
+                rules.add("minimum " + AiJsonSchemaGenerator.number(aiField.min()));
+            }
+            if (!Double.isInfinite(aiField.max())) {
+                rules.add("maximum " + AiJsonSchemaGenerator.number(aiField.max()));
+            }
+        }
+        if (kind == AiJsonSchemaGenerator.ValueKind.STRING || kind == AiJsonSchemaGenerator.ValueKind.SEQUENCE) {
+            String length = AiJsonSchemaGenerator.lengthHint(aiField,
+                    kind == AiJsonSchemaGenerator.ValueKind.STRING ? "characters" : "items");
+            if (length != null) {
+                rules.add(length);
+            }
+        }
+        if (kind == AiJsonSchemaGenerator.ValueKind.STRING && !aiField.pattern().isEmpty()) {
+            rules.add("must match /" + aiField.pattern() + "/");
+        }
+        return String.join(", ", rules);
+    }
+
+    // 字段不合法时为 true 的表达式，其中 value 是字段的当前值；没有可检查的约束时返回 null
+    // 数值比较、长度和 null 检查都不分配对象，只有 pattern 会创建一个 Matcher
+    private String invalidCondition(TypeElement classElement, VariableElement field, AiField aiField, int index) {
+        if (aiField == null) {
+            return null;
+        }
+        TypeMirror type = field.asType();
+        AiJsonSchemaGenerator.ValueKind kind = AiJsonSchemaGenerator.valueKind(type, processingEnv);
+        boolean primitive = type.getKind().isPrimitive();
+        boolean hasRange = !Double.isInfinite(aiField.min()) || !Double.isInfinite(aiField.max());
+        boolean hasLength = aiField.minLength() > 0 || aiField.maxLength() != Integer.MAX_VALUE;
+        boolean hasPattern = !aiField.pattern().isEmpty();
+
+        if (hasRange && kind != AiJsonSchemaGenerator.ValueKind.NUMBER) {
+            printWarning(field, "min/max only apply to numeric fields and are ignored");
+        }
+        if (hasLength && kind != AiJsonSchemaGenerator.ValueKind.STRING && kind != AiJsonSchemaGenerator.ValueKind.SEQUENCE) {
+            printWarning(field, "minLength/maxLength only apply to strings, arrays and collections and are ignored");
+        }
+        if (hasPattern && kind != AiJsonSchemaGenerator.ValueKind.STRING) {
+            printWarning(field, "pattern only applies to string fields and is ignored");
+        }
+
+        List<String> checks = new ArrayList<>();
+        if (kind == AiJsonSchemaGenerator.ValueKind.NUMBER) {
+            if (!Double.isInfinite(aiField.min())) {
+                checks.add("value < " + AiJsonSchemaGenerator.number(aiField.min()));
+            }
+            if (!Double.isInfinite(aiField.max())) {
+                checks.add("value > " + AiJsonSchemaGenerator.number(aiField.max()));
+            }
+        } else if (kind == AiJsonSchemaGenerator.ValueKind.STRING || kind == AiJsonSchemaGenerator.ValueKind.SEQUENCE) {
+            String length = kind == AiJsonSchemaGenerator.ValueKind.STRING ? "value.length()"
+                    : type.getKind() == TypeKind.ARRAY ? "value.length" : "value.size()";
+            if (aiField.minLength() > 0) {
+                checks.add(length + " < " + aiField.minLength());
+            }
+            if (aiField.maxLength() != Integer.MAX_VALUE) {
+                checks.add(length + " > " + aiField.maxLength());
+            }
+            if (hasPattern && kind == AiJsonSchemaGenerator.ValueKind.STRING) {
+                checks.add("!PATTERN_" + field.getSimpleName() + ".matcher(value).matches()");
+            }
+        }
+        boolean checkNull = aiField.required() && !primitive;
+        if (checks.isEmpty() && !checkNull) {
+            return null;
+        }
+
+        if (index >= Long.SIZE) {
+            printWarning(field, "only the first " + Long.SIZE + " fields can be validated; constraints are ignored");
+            return null;
+        }
+        if (accessor(classElement, field) == null) {
+            printWarning(field, "no accessible getter or field; constraints are only used in the prompt");
+            return null;
+        }
+
+        String condition = String.join(" || ", checks);
+        if (primitive) {
+            return condition;
+        }
+        if (checkNull) {
+            return checks.isEmpty() ? "value == null" : "value == null || " + condition;
+        }
+        // 非必填字段为 null 时视为合法
+        return "value != null && (" + condition + ")";
+    }
+
+    // 读取字段值的表达式：优先使用 getter，其次是非 private 字段；都不可用时返回 null
+    private String accessor(TypeElement classElement, VariableElement field) {
+        String name = field.getSimpleName().toString();
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (Element member : classElement.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD
+                    || !(member.getSimpleName().contentEquals("get" + capitalized)
+                            || member.getSimpleName().contentEquals("is" + capitalized))
+                    || member.getModifiers().contains(Modifier.PRIVATE)
+                    || member.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) member;
+            if (method.getParameters().isEmpty()
+                    && processingEnv.getTypeUtils().isSameType(method.getReturnType(), field.asType())) {
+                return "entity." + member.getSimpleName() + "()";
+            }
+        }
+        if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+            return "entity." + name;
+        }
+        return null;
+    }
+
+    // 从 parser 当前 token 读取字段值的表达式；复杂类型交给 Jackson 按 TypeReference 读取
+    private String readExpression(VariableElement field) {
+        TypeMirror type = field.asType();
+        switch (type.getKind()) {
+            case INT: return "AiJsonReaders.readInt(parser)";
+            case LONG: return "AiJsonReaders.readLong(parser)";
+            case DOUBLE: return "AiJsonReaders.readDouble(parser)";
+            case FLOAT: return "(float) AiJsonReaders.readDouble(parser)";
+            case SHORT: return "(short) AiJsonReaders.readInt(parser)";
+            case BYTE: return "(byte) AiJsonReaders.readInt(parser)";
+            case BOOLEAN: return "AiJsonReaders.readBoolean(parser)";
+            case CHAR: return "AiJsonReaders.readChar(parser)";
+            case ARRAY: return "MAPPER.readValue(parser, TYPE_" + field.getSimpleName() + ")";
+            case DECLARED: break;
+            default: return null;
+        }
+
+        Element typeElement = processingEnv.getTypeUtils().asElement(type);
+        if (typeElement.getKind() == ElementKind.ENUM) {
+            return "AiJsonReaders.readEnum(parser, " + processingEnv.getTypeUtils().erasure(type) + ".class)";
+        }
+        switch (((TypeElement) typeElement).getQualifiedName().toString()) {
+            case "java.lang.String": return "AiJsonReaders.readString(parser)";
+            case "java.lang.Integer": return "AiJsonReaders.readBoxedInt(parser)";
+            case "java.lang.Long": return "AiJsonReaders.readBoxedLong(parser)";
+            case "java.lang.Double": return "AiJsonReaders.readBoxedDouble(parser)";
+            case "java.lang.Boolean": return "AiJsonReaders.readBoxedBoolean(parser)";
+            case "java.lang.Character": return "AiJsonReaders.readBoxedChar(parser)";
+            default: return "MAPPER.readValue(parser, TYPE_" + field.getSimpleName() + ")";
+        }
+    }
+
+    // 赋值语句模板：优先使用 setter，其次是非 private 字段；都不可用时返回 null
+    private String assignment(TypeElement classElement, VariableElement field) {
+        String name = field.getSimpleName().toString();
+        String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (Element member : classElement.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD
+                    || !member.getSimpleName().contentEquals(setterName)
+                    || member.getModifiers().contains(Modifier.PRIVATE)
+                    || member.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            List<? extends VariableElement> parameters = ((ExecutableElement) member).getParameters();
+            if (parameters.size() == 1
+                    && processingEnv.getTypeUtils().isSameType(parameters.get(0).asType(), field.asType())) {
+                return "entity." + setterName + "(%s);";
+            }
+        }
+        if (!field.getModifiers().contains(Modifier.PRIVATE) && !field.getModifiers().contains(Modifier.FINAL)) {
+            return "entity." + name + " = %s;";
+        }
+        return null;
+    }
+
+    // 生成的读取器需要可访问的无参构造方法，并且每个字段都能赋值
+    private boolean canGenerateReader(TypeElement classElement, List<FieldInfo> fields) {
+        if (classElement.getModifiers().contains(Modifier.ABSTRACT)
+                || classElement.getNestingKind() != NestingKind.TOP_LEVEL) {
+            return false;
+        }
+        boolean hasConstructor = false;
+        boolean hasNoArgConstructor = false;
+        for (Element member : classElement.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.CONSTRUCTOR) {
+                hasConstructor = true;
+                if (((ExecutableElement) member).getParameters().isEmpty()
+                        && !member.getModifiers().contains(Modifier.PRIVATE)) {
+                    hasNoArgConstructor = true;
+                }
+            }
+        }
+        if (hasConstructor && !hasNoArgConstructor) {
+            return false;
+        }
+        return fields.stream().allMatch(field -> field.readExpression != null && field.assignment != null);
     }
     
     private void generateFactoryClass(
+            TypeElement classElement,
             String packageName,
             String originalClassName,
             String factoryClassName,
             AiEntity config,
-            List<FieldInfo> fields
+            List<FieldInfo> fields,
+            boolean generateReader
     ) throws IOException {
+        // 生成内容只取决于实体类本身（字段按源码顺序，不含时间戳等），相同输入总是得到相同的输出
         JavaFileObject factoryFile = processingEnv.getFiler()
-                .createSourceFile(packageName + "." + factoryClassName);
+                .createSourceFile(packageName.isEmpty() ? factoryClassName : packageName + "." + factoryClassName, classElement);
         
         try (Writer writer = factoryFile.openWriter()) {
             // 写入包声明
@@ -88,196 +316,503 @@ public class AiEntityProcessor extends AbstractProcessor {
             }
             
             // 写入导入语句
-            writeImports(writer);
+            writeImports(writer, packageName, fields, generateReader);
             
             // 开始写入类定义
             writer.write("public class " + factoryClassName + " {\n\n");
             
             // 写入静态字段
-            writeStaticFields(writer, config);
+            writeStaticFields(writer, classElement, config, originalClassName, factoryClassName, fields, generateReader);
+            
+            // 写入流式读取方法
+            writeReaderMethods(writer, originalClassName, fields, generateReader);
             
-            // 写入工具方法
-            writeUtilityMethods(writer, originalClassName, fields);
+            // 写入校验方法
+            if (hasValidator(fields)) {
+                writeValidator(writer, originalClassName, fields);
+            }
             
             // 写入主要方法
-            writeMainMethods(writer, originalClassName, fields);
+            writeMainMethods(writer, originalClassName);
             
             // 结束类定义
             writer.write("}\n");
         }
     }
     
-    private void writeImports(Writer writer) throws IOException {
-        writer.write("import java.io.File;\n");
-        writer.write("import java.io.IOException;\n");
-        writer.write("import java.nio.file.Files;\n");
-        writer.write("import java.net.URI;\n");
-        writer.write("import java.net.http.HttpClient;\n");
-        writer.write("import java.net.http.HttpRequest;\n");
-        writer.write("import java.net.http.HttpResponse;\n");
-        writer.write("import com.fasterxml.jackson.databind.ObjectMapper;\n");
-        writer.write("import com.fasterxml.jackson.databind.JsonNode;\n");
-        writer.write("import com.fasterxml.jackson.core.type.TypeReference;\n\n");
+    // 只导入生成代码实际用到的类型：Pattern、TypeReference、Jackson 的流式 API 等取决于实体的字段
+    private void writeImports(Writer writer, String packageName, List<FieldInfo> fields, boolean generateReader) throws IOException {
+        List<String> imports = new ArrayList<>();
+        imports.add("java.io.File");
+        imports.add("java.io.IOException");
+        imports.add("java.nio.file.Path");
+        imports.add("java.util.Collection");
+        imports.add("java.util.List");
+        imports.add("java.util.concurrent.CompletableFuture");
+        if (usesPatterns(fields)) {
+            imports.add("java.util.regex.Pattern");
+        }
+        imports.add("java.util.stream.Stream");
+        if (usesMapper(fields, generateReader)) {
+            imports.add("com.fasterxml.jackson.databind.ObjectMapper");
+        }
+        imports.add("com.fasterxml.jackson.core.JsonParser");
+        if (generateReader) {
+            imports.add("com.fasterxml.jackson.core.JsonToken");
+        }
+        if (usesTypeReferences(fields)) {
+            imports.add("com.fasterxml.jackson.core.type.TypeReference");
+        }
+        // 与运行时库同包时不需要导入
+        if (!RUNTIME_PACKAGE.equals(packageName)) {
+            imports.add(RUNTIME_PACKAGE + ".AiBatchResult");
+            imports.add(RUNTIME_PACKAGE + ".AiCallOptions");
+            imports.add(RUNTIME_PACKAGE + ".AiConcurrency");
+            imports.add(RUNTIME_PACKAGE + ".AiEndpointRouter");
+            imports.add(RUNTIME_PACKAGE + ".AiEntityClient");
+            if (usesReaders(fields, generateReader)) {
+                imports.add(RUNTIME_PACKAGE + ".AiJsonReaders");
+            }
+            imports.add(RUNTIME_PACKAGE + ".AiModelTiering");
+            imports.add(RUNTIME_PACKAGE + ".AiResponseCache");
+            imports.add(RUNTIME_PACKAGE + ".AiResult");
+            imports.add(RUNTIME_PACKAGE + ".AiTransport");
+        }
+        for (String name : imports) {
+            writer.write("import " + name + ";\n");
+        }
+        writer.write("\n");
     }
-    
-    private void writeStaticFields(Writer writer, AiEntity config) throws IOException {
-        writer.write(INDENT + "private static final HttpClient httpClient = HttpClient.newHttpClient();\n");
-        writer.write(INDENT + "private static final ObjectMapper MAPPER = new ObjectMapper();\n");
-        writer.write(INDENT + "private static final String MODEL = \"" + config.model() + "\";\n");
-        writer.write(INDENT + "private static final String API_URL = \"" + config.url() + "\";\n");
-        writer.write(INDENT + "private static final String API_KEY = \"" + config.apikey() + "\";\n\n");
+
+    private static boolean usesTypeReferences(List<FieldInfo> fields) {
+        return fields.stream().anyMatch(field -> field.readExpression != null && field.readExpression.contains("TYPE_" + field.name));
+    }
+
+    private static boolean usesPatterns(List<FieldInfo> fields) {
+        return fields.stream().anyMatch(field -> field.invalidCondition != null && field.invalidCondition.contains("PATTERN_" + field.name));
+    }
+
+    // 回退到 Jackson 反射，或有字段按 TypeReference 读取时才需要 MAPPER
+    private static boolean usesMapper(List<FieldInfo> fields, boolean generateReader) {
+        return !generateReader || fields.stream().anyMatch(field -> field.readExpression.contains("MAPPER."));
+    }
+
+    private static boolean usesReaders(List<FieldInfo> fields, boolean generateReader) {
+        return generateReader && fields.stream().anyMatch(field -> field.readExpression.contains("AiJsonReaders."));
     }
     
-    private void writeUtilityMethods(Writer writer, String originalClassName, List<FieldInfo> fields) throws IOException {
-        // 生成构建系统提示的方法
-        writer.write(INDENT + "private static String buildSystemPrompt() {\n");
-        writer.write(INDENT + INDENT + "StringBuilder prompt = new StringBuilder();\n");
-        writer.write(INDENT + INDENT + "prompt.append(\"You are a JSON generator for the " + originalClassName + " class. \");\n");
-        writer.write(INDENT + INDENT + "prompt.append(\"Generate valid JSON for the following fields: \");\n");
-        
-        // 添加字段信息到提示中
+    private void writeStaticFields(Writer writer, TypeElement classElement, AiEntity config, String originalClassName,
+                                   String factoryClassName, List<FieldInfo> fields, boolean generateReader) throws IOException {
+        if (usesMapper(fields, generateReader)) {
+            writer.write(INDENT + "private static final ObjectMapper MAPPER = AiEntityClient.mapper();\n\n");
+        }
+
+        // 生成的读取器用到的复杂类型的 TypeReference
+        boolean hasTypeReferences = usesTypeReferences(fields);
+        for (FieldInfo field : fields) {
+            if (field.readExpression != null && field.readExpression.contains("TYPE_" + field.name)) {
+                writer.write(INDENT + "private static final TypeReference<" + field.type + "> TYPE_" + field.name
+                        + " = new TypeReference<>() {};\n");
+            }
+        }
+        if (hasTypeReferences) {
+            writer.write("\n");
+        }
+
+        // 校验器用到的正则表达式只编译一次
+        boolean hasPatterns = usesPatterns(fields);
+        for (FieldInfo field : fields) {
+            if (field.invalidCondition != null && field.invalidCondition.contains("PATTERN_" + field.name)) {
+                writer.write(INDENT + "private static final Pattern PATTERN_" + field.name + " = Pattern.compile("
+                        + javaLiteral(field.pattern) + ");\n");
+            }
+        }
+        if (hasPatterns) {
+            writer.write("\n");
+        }
+
+        // 系统提示和请求体的固定部分在编译期生成，运行时只需要写入转义后的用户输入
+        // 单对象、数组、微批三种请求各自使用对应的提示和 response_format
+        boolean jsonSchema = config.responseFormat() == AiEntity.ResponseFormat.JSON_SCHEMA;
+        String systemPrompt = config.compactPrompt()
+                ? buildCompactPrompt(originalClassName, fields, jsonSchema)
+                : buildSystemPrompt(originalClassName, fields);
+        String arrayPrompt = systemPrompt + (systemPrompt.endsWith(".") ? " " : ". ")
+                + "Respond with {\"items\":[...]} containing one object for every " + originalClassName
+                + " described in the user message.";
+        // 微批处理使用的系统提示：一次请求中包含多条带编号的输入，要求按编号返回结果
+        String batchPrompt = systemPrompt + (systemPrompt.endsWith(".") ? " " : ". ")
+                + "The user message is a JSON object {\"items\":[{\"id\":<number>,\"text\":<input>}]}. "
+                + "Generate one object for every item from its text and respond with {\"results\":[{\"id\":<the item id>, ...fields}]}, "
+                + "keeping every id exactly once.";
+
+        String format;
+        String arrayFormat;
+        String batchFormat;
+        List<String> repairSchemas = null;
+        String repairDefinitions = null;
+        boolean repairStrict = false;
+        if (jsonSchema) {
+            AiJsonSchemaGenerator schemas = new AiJsonSchemaGenerator(processingEnv);
+            String entitySchema = schemas.objectSchema(classElement, Map.of());
+            String batchItemSchema = schemas.objectSchema(classElement, Map.of("id", "{\"type\":\"integer\"}"));
+            String schema = schemas.rootSchema(entitySchema);
+            String arraySchema = schemas.rootSchema(AiJsonSchemaGenerator.wrapperSchema("items", entitySchema));
+            String batchSchema = schemas.rootSchema(AiJsonSchemaGenerator.wrapperSchema("results", batchItemSchema));
+            format = jsonSchemaFormat(originalClassName, schemas.isStrict(), schema);
+            arrayFormat = jsonSchemaFormat(originalClassName + "_items", schemas.isStrict(), arraySchema);
+            batchFormat = jsonSchemaFormat(originalClassName + "_results", schemas.isStrict(), batchSchema);
+            // 修复请求的 schema 在运行时从不合法字段各自的 schema 拼出
+            repairSchemas = new ArrayList<>();
+            for (VariableElement field : AiJsonSchemaGenerator.fields(classElement)) {
+                repairSchemas.add(schemas.fieldSchema(field));
+            }
+            repairDefinitions = schemas.definitions();
+            repairStrict = schemas.isStrict();
+        } else {
+            format = "{\"type\":\"json_object\"}";
+            arrayFormat = format;
+            batchFormat = format;
+        }
+
+        String builderIndent = INDENT + INDENT + INDENT;
+        String argumentIndent = builderIndent + INDENT + INDENT;
+        writer.write(INDENT + "private static final AiEntityClient<" + originalClassName + "> CLIENT = AiEntityClient.builder("
+                + javaLiteral(originalClassName) + ", " + factoryClassName + "::readEntity, " + originalClassName + "[]::new)\n");
+        writer.write(builderIndent + ".model(" + javaLiteral(config.model()) + ")\n");
+        writer.write(builderIndent + ".apiUrl(" + javaLiteral(config.url()) + ")\n");
+        writer.write(builderIndent + ".apiKey(" + javaLiteral(config.apikey()) + ")\n");
+        writer.write(builderIndent + ".temperature(" + TEMPERATURE + ")\n");
+        writer.write(builderIndent + ".systemPrompt(" + javaLiteral(systemPrompt) + ")\n");
+        writer.write(builderIndent + ".payload(\n");
+        writer.write(argumentIndent + javaLiteral(payloadPrefix(config, systemPrompt)) + ",\n");
+        writer.write(argumentIndent + javaLiteral(payloadSuffix(format, false)) + ")\n");
+        writer.write(builderIndent + ".arrayPayload(\n");
+        writer.write(argumentIndent + javaLiteral(payloadPrefix(config, arrayPrompt)) + ",\n");
+        writer.write(argumentIndent + javaLiteral(payloadSuffix(arrayFormat, false)) + ",\n");
+        writer.write(argumentIndent + javaLiteral(payloadSuffix(arrayFormat, true)) + ")\n");
+        writer.write(builderIndent + ".batchPayload(\n");
+        writer.write(argumentIndent + javaLiteral(payloadPrefix(config, batchPrompt)) + ",\n");
+        writer.write(argumentIndent + javaLiteral(payloadSuffix(batchFormat, false)) + ")\n");
+        if (hasValidator(fields)) {
+            // 校验失败时只针对不合法的字段重新请求，结果通过 readFields 合并回已有对象
+            writer.write(builderIndent + ".validation(" + factoryClassName + "::validate, " + factoryClassName + "::readFields,\n");
+            writer.write(argumentIndent + "List.of(" + fields.stream().map(field -> javaLiteral(field.name))
+                    .collect(Collectors.joining(", ")) + "),\n");
+            writer.write(argumentIndent + "List.of(" + fields.stream().map(field -> javaLiteral(field.rules))
+                    .collect(Collectors.joining(", ")) + "))\n");
+            if (repairSchemas != null) {
+                writer.write(builderIndent + ".repairSchema(List.of(\n");
+                for (int i = 0; i < repairSchemas.size(); i++) {
+                    writer.write(argumentIndent + javaLiteral(repairSchemas.get(i)) + (i < repairSchemas.size() - 1 ? ",\n" : "),\n"));
+                }
+                writer.write(argumentIndent + (repairDefinitions != null ? javaLiteral(repairDefinitions) : "null")
+                        + ", " + repairStrict + ")\n");
+            }
+        }
+        writer.write(builderIndent + ".build();\n\n");
+    }
+
+    // 请求体在用户输入之前的部分
+    private static String payloadPrefix(AiEntity config, String systemPrompt) {
+        return "{\"model\":\"" + jsonEscape(config.model()) + "\","
+                + "\"messages\":[{\"role\":\"system\",\"content\":\"" + jsonEscape(systemPrompt) + "\"},"
+                + "{\"role\":\"user\",\"content\":\"";
+    }
+
+    // 请求体在用户输入之后的部分
+    private static String payloadSuffix(String responseFormat, boolean stream) {
+        return "\"}],\"response_format\":" + responseFormat + ",\"temperature\":" + TEMPERATURE
+                + (stream ? ",\"stream\":true}" : "}");
+    }
+
+    private static String jsonSchemaFormat(String name, boolean strict, String schema) {
+        return "{\"type\":\"json_schema\",\"json_schema\":{\"name\":\"" + jsonEscape(name) + "\",\"strict\":" + strict
+                + ",\"schema\":" + schema + "}}";
+    }
+
+    private String buildSystemPrompt(String originalClassName, List<FieldInfo> fields) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("You are a JSON generator for the ").append(originalClassName).append(" class. ");
+        prompt.append("Generate valid JSON for the following fields: ");
         for (int i = 0; i < fields.size(); i++) {
             FieldInfo field = fields.get(i);
             String description = field.description.isEmpty() ? field.name : field.description;
-            writer.write(INDENT + INDENT + "prompt.append(\"" + field.name + " (" + field.type + "): " + description + "\");\n");
+            prompt.append(field.name).append(" (").append(field.type).append("): ").append(description);
+            if (!field.rules.isEmpty()) {
+                prompt.append(" [").append(field.rules).append("]");
+            }
             if (i < fields.size() - 1) {
-                writer.write(INDENT + INDENT + "prompt.append(\", \");\n");
+                prompt.append(", ");
             }
         }
-        
-        writer.write(INDENT + INDENT + "return prompt.toString();\n");
+        return prompt.toString();
+    }
+
+    // 精简提示：使用 JSON Schema 时字段名、类型和描述都已在 schema 中，提示里不再重复
+    private String buildCompactPrompt(String originalClassName, List<FieldInfo> fields, boolean jsonSchema) {
+        if (jsonSchema) {
+            return "Generate " + originalClassName + " JSON from the user message.";
+        }
+        return "Generate " + originalClassName + " JSON with fields " + fields.stream()
+                .map(field -> {
+                    String text = field.description.isEmpty() ? field.name : field.name + ": " + field.description;
+                    return field.rules.isEmpty() ? text : text + " [" + field.rules + "]";
+                })
+                .collect(Collectors.joining("; ")) + ".";
+    }
+
+    private static boolean hasValidator(List<FieldInfo> fields) {
+        return fields.stream().anyMatch(field -> field.invalidCondition != null);
+    }
+
+    // 返回不合法字段的位掩码，第 i 位对应第 i 个字段；只做比较和长度检查，不经过 Jackson
+    private void writeValidator(Writer writer, String originalClassName, List<FieldInfo> fields) throws IOException {
+        writer.write(INDENT + "private static long validate(" + originalClassName + " entity) {\n");
+        writer.write(INDENT + INDENT + "long invalid = 0L;\n");
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            if (field.invalidCondition == null) {
+                continue;
+            }
+            writer.write(INDENT + INDENT + "{\n");
+            writer.write(INDENT + INDENT + INDENT + field.type + " value = " + field.accessor + ";\n");
+            writer.write(INDENT + INDENT + INDENT + "if (" + field.invalidCondition + ") {\n");
+            writer.write(INDENT + INDENT + INDENT + INDENT + "invalid |= 1L << " + i + ";\n");
+            writer.write(INDENT + INDENT + INDENT + "}\n");
+            writer.write(INDENT + INDENT + "}\n");
+        }
+        writer.write(INDENT + INDENT + "return invalid;\n");
         writer.write(INDENT + "}\n\n");
-        
-        // 写入 callAI 方法
-        writeCallAiMethod(writer);
     }
-    
-    private void writeCallAiMethod(Writer writer) throws IOException {
-        writer.write(INDENT + "private static String callAI(String inputText) {\n");
-        writer.write(INDENT + INDENT + "try {\n");
-        writer.write(INDENT + INDENT + INDENT + "String systemPrompt = buildSystemPrompt();\n");
-        writer.write(INDENT + INDENT + INDENT + "String payload = String.format(\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "\"{\\\"model\\\": \\\"%s\\\", " +
-                "\\\"messages\\\": [" +
-                "{\\\"role\\\": \\\"system\\\", \\\"content\\\": \\\"%s\\\"}, " +
-                "{\\\"role\\\": \\\"user\\\", \\\"content\\\": \\\"%s\\\"}], " +
-                "\\\"response_format\\\": {\\\"type\\\": \\\"json_object\\\"}, " +
-                "\\\"temperature\\\": 0.7}\"," +
-                "\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "MODEL,\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "systemPrompt.replace(\"\\\"\", \"\\\\\\\"\"),\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "inputText.replace(\"\\\"\", \"\\\\\\\"\")\n");
-        writer.write(INDENT + INDENT + INDENT + ");\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "System.out.println(\"Sending request to AI API...\");\n");
-        writer.write(INDENT + INDENT + INDENT + "System.out.println(\"Request payload: \" + payload);\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "HttpRequest request = HttpRequest.newBuilder(URI.create(API_URL))\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + ".header(\"Content-Type\", \"application/json\")\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + ".header(\"Authorization\", \"Bearer \" + API_KEY)\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + ".POST(HttpRequest.BodyPublishers.ofString(payload))\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + ".build();\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());\n");
-        writer.write(INDENT + INDENT + INDENT + "String responseBody = response.body();\n");
-        writer.write(INDENT + INDENT + INDENT + "System.out.println(\"API Response: \" + responseBody);\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "if (response.statusCode() != 200) {\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "throw new RuntimeException(\"API request failed with status code: \" + response.statusCode());\n");
-        writer.write(INDENT + INDENT + INDENT + "}\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "JsonNode rootNode = MAPPER.readTree(responseBody);\n");
-        writer.write(INDENT + INDENT + INDENT + "if (rootNode.has(\"error\")) {\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "throw new RuntimeException(\"API Error: \" + rootNode.get(\"error\").get(\"message\").asText());\n");
-        writer.write(INDENT + INDENT + INDENT + "}\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "if (!rootNode.has(\"choices\") || rootNode.get(\"choices\").size() == 0) {\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "throw new RuntimeException(\"Invalid API response format: missing choices\");\n");
-        writer.write(INDENT + INDENT + INDENT + "}\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "JsonNode firstChoice = rootNode.get(\"choices\").get(0);\n");
-        writer.write(INDENT + INDENT + INDENT + "if (!firstChoice.has(\"message\") || !firstChoice.get(\"message\").has(\"content\")) {\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "throw new RuntimeException(\"Invalid API response format: missing message content\");\n");
-        writer.write(INDENT + INDENT + INDENT + "}\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "String content = firstChoice.get(\"message\").get(\"content\").asText();\n");
-        writer.write(INDENT + INDENT + INDENT + "System.out.println(\"Extracted content: \" + content);\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "return content;\n");
-        writer.write(INDENT + INDENT + "} catch (Exception e) {\n");
-        writer.write(INDENT + INDENT + INDENT + "System.err.println(\"Error in callAI: \" + e.getMessage());\n");
-        writer.write(INDENT + INDENT + INDENT + "e.printStackTrace();\n");
-        writer.write(INDENT + INDENT + INDENT + "throw new RuntimeException(\"AI request failed\", e);\n");
+
+    private void writeReaderMethods(Writer writer, String originalClassName, List<FieldInfo> fields, boolean generateReader) throws IOException {
+        writer.write(INDENT + "private static " + originalClassName + " readEntity(JsonParser parser) throws IOException {\n");
+        if (generateReader) {
+            writer.write(INDENT + INDENT + originalClassName + " entity = new " + originalClassName + "();\n");
+            writer.write(INDENT + INDENT + "readFields(parser, entity);\n");
+            writer.write(INDENT + INDENT + "return entity;\n");
+        } else {
+            // 无法直接绑定字段时（没有无参构造方法或字段不可写）回退到 Jackson 反射
+            writer.write(INDENT + INDENT + "return MAPPER.readValue(parser, " + originalClassName + ".class);\n");
+        }
+        writer.write(INDENT + "}\n\n");
+
+        // parser 位于 START_OBJECT 或第一个 FIELD_NAME 上，把出现的字段写入 entity，读取到 END_OBJECT
+        writer.write(INDENT + "private static void readFields(JsonParser parser, " + originalClassName + " entity) throws IOException {\n");
+        if (!generateReader) {
+            writer.write(INDENT + INDENT + "MAPPER.readerForUpdating(entity).readValue(parser);\n");
+            writer.write(INDENT + "}\n\n");
+            return;
+        }
+        writer.write(INDENT + INDENT + "JsonToken token = parser.currentToken();\n");
+        writer.write(INDENT + INDENT + "if (token == JsonToken.START_OBJECT) {\n");
+        writer.write(INDENT + INDENT + INDENT + "token = parser.nextToken();\n");
+        writer.write(INDENT + INDENT + "}\n");
+        writer.write(INDENT + INDENT + "for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {\n");
+        writer.write(INDENT + INDENT + INDENT + "String field = parser.currentName();\n");
+        writer.write(INDENT + INDENT + INDENT + "parser.nextToken();\n");
+        writer.write(INDENT + INDENT + INDENT + "switch (field) {\n");
+        for (FieldInfo field : fields) {
+            writer.write(INDENT + INDENT + INDENT + INDENT + "case " + javaLiteral(field.name) + ":\n");
+            writer.write(INDENT + INDENT + INDENT + INDENT + INDENT + String.format(field.assignment, field.readExpression) + "\n");
+            writer.write(INDENT + INDENT + INDENT + INDENT + INDENT + "break;\n");
+        }
+        writer.write(INDENT + INDENT + INDENT + INDENT + "default:\n");
+        writer.write(INDENT + INDENT + INDENT + INDENT + INDENT + "parser.skipChildren();\n");
+        writer.write(INDENT + INDENT + INDENT + INDENT + INDENT + "break;\n");
+        writer.write(INDENT + INDENT + INDENT + "}\n");
+        writer.write(INDENT + INDENT + "}\n");
+        writer.write(INDENT + INDENT + "if (token != JsonToken.END_OBJECT) {\n");
+        writer.write(INDENT + INDENT + INDENT + "throw new IOException(\"Unexpected token while reading " + originalClassName + ": \" + token);\n");
         writer.write(INDENT + INDENT + "}\n");
         writer.write(INDENT + "}\n\n");
     }
-    
-    private void writeMainMethods(Writer writer, String originalClassName, List<FieldInfo> fields) throws IOException {
+
+    private void writeMainMethods(Writer writer, String originalClassName) throws IOException {
+        String arrayType = originalClassName + "[]";
+
+        // 运行时实例，用于更细的配置（调度器、实体类型等）
+        writer.write(INDENT + "public static AiEntityClient<" + originalClassName + "> client() {\n");
+        writer.write(INDENT + INDENT + "return CLIENT;\n");
+        writer.write(INDENT + "}\n\n");
+
+        // 传输层配置：null 表示使用 AiEntityClient.getDefaultTransport()
+        writer.write(INDENT + "public static void setTransport(AiTransport transport) {\n");
+        writer.write(INDENT + INDENT + "CLIENT.setTransport(transport);\n");
+        writer.write(INDENT + "}\n\n");
+
+        // 多地址路由：null 表示使用 AiEntityClient.getDefaultRouter()，两者都为 null 时直接发往 @AiEntity 中的地址
+        writer.write(INDENT + "public static void setRouter(AiEndpointRouter router) {\n");
+        writer.write(INDENT + INDENT + "CLIENT.setRouter(router);\n");
+        writer.write(INDENT + "}\n\n");
+
+        // 按输入大小选择模型：null 表示始终使用 @AiEntity 中配置的模型
+        writer.write(INDENT + "public static void setModelTiering(AiModelTiering modelTiering) {\n");
+        writer.write(INDENT + INDENT + "CLIENT.setModelTiering(modelTiering);\n");
+        writer.write(INDENT + "}\n\n");
+
+        // 缓存配置：未单独设置时使用 AiResponseCache.getDefault()，两者都为 null 时不缓存
+        writer.write(INDENT + "public static void setCache(AiResponseCache responseCache) {\n");
+        writer.write(INDENT + INDENT + "CLIENT.setCache(responseCache);\n");
+        writer.write(INDENT + "}\n\n");
+
+        // 微批处理：并发的单对象请求最多攒 maxItems 个或等待 maxDelayMillis 毫秒后合并为一次请求
+        writer.write(INDENT + "public static void enableBatching(int maxItems, long maxDelayMillis) {\n");
+        writer.write(INDENT + INDENT + "CLIENT.enableBatching(maxItems, maxDelayMillis);\n");
+        writer.write(INDENT + "}\n\n");
+
+        writer.write(INDENT + "public static void disableBatching() {\n");
+        writer.write(INDENT + INDENT + "CLIENT.disableBatching();\n");
+        writer.write(INDENT + "}\n\n");
+
         // createByString 方法
         writer.write(INDENT + "public static " + originalClassName + " createByString(String inputText) {\n");
-        writer.write(INDENT + INDENT + "String jsonResponse = callAI(inputText);\n");
-        writer.write(INDENT + INDENT + "try {\n");
-        writer.write(INDENT + INDENT + INDENT + "return MAPPER.readValue(jsonResponse, " + originalClassName + ".class);\n");
-        writer.write(INDENT + INDENT + "} catch (Exception e) {\n");
-        writer.write(INDENT + INDENT + INDENT + "throw new RuntimeException(\"Failed to parse AI response\", e);\n");
-        writer.write(INDENT + INDENT + "}\n");
+        writer.write(INDENT + INDENT + "return CLIENT.create(inputText);\n");
         writer.write(INDENT + "}\n\n");
-        
+
+        // 单次调用覆盖模型或地址
+        writer.write(INDENT + "public static " + originalClassName + " createByString(String inputText, AiCallOptions options) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.create(inputText, options);\n");
+        writer.write(INDENT + "}\n\n");
+
+        // createByStringAsync 方法
+        writer.write(INDENT + "public static CompletableFuture<" + originalClassName + "> createByStringAsync(String inputText) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.createAsync(inputText);\n");
+        writer.write(INDENT + "}\n\n");
+
+        writer.write(INDENT + "public static CompletableFuture<" + originalClassName + "> createByStringAsync(String inputText, AiCallOptions options) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.createAsync(inputText, options);\n");
+        writer.write(INDENT + "}\n\n");
+
+        // createAll 方法：在虚拟线程上并发创建，结果与输入顺序一致
+        writer.write(INDENT + "public static List<AiResult<" + originalClassName + ">> createAll(Collection<String> inputTexts) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.createAll(inputTexts, AiConcurrency.DEFAULT_MAX_CONCURRENCY);\n");
+        writer.write(INDENT + "}\n\n");
+
+        writer.write(INDENT + "public static List<AiResult<" + originalClassName + ">> createAll(Collection<String> inputTexts, int maxConcurrency) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.createAll(inputTexts, maxConcurrency);\n");
+        writer.write(INDENT + "}\n\n");
+
         // createArrayByString 方法
-        writer.write(INDENT + "public static " + originalClassName + "[] createArrayByString(String inputText) {\n");
-        writer.write(INDENT + INDENT + "String jsonResponse = callAI(inputText);\n");
-        writer.write(INDENT + INDENT + "try {\n");
-        writer.write(INDENT + INDENT + INDENT + "JsonNode jsonNode = MAPPER.readTree(jsonResponse);\n");
-        writer.write(INDENT + INDENT + INDENT + "JsonNode arrayNode = null;\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "// 尝试从不同的路径获取数组\n");
-        writer.write(INDENT + INDENT + INDENT + "if (jsonNode.isArray()) {\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "arrayNode = jsonNode;\n");
-        writer.write(INDENT + INDENT + INDENT + "} else if (jsonNode.has(\"persons\")) {\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "arrayNode = jsonNode.get(\"persons\");\n");
-        writer.write(INDENT + INDENT + INDENT + "} else if (jsonNode.has(\"data\")) {\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "arrayNode = jsonNode.get(\"data\");\n");
-        writer.write(INDENT + INDENT + INDENT + "} else if (jsonNode.has(\"results\")) {\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "arrayNode = jsonNode.get(\"results\");\n");
-        writer.write(INDENT + INDENT + INDENT + "} else {\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "// 如果找不到数组，尝试将整个响应包装成数组\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "arrayNode = MAPPER.createArrayNode().add(jsonNode);\n");
-        writer.write(INDENT + INDENT + INDENT + "}\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "if (!arrayNode.isArray()) {\n");
-        writer.write(INDENT + INDENT + INDENT + INDENT + "throw new RuntimeException(\"Expected JSON array response\");\n");
-        writer.write(INDENT + INDENT + INDENT + "}\n\n");
-        
-        writer.write(INDENT + INDENT + INDENT + "return MAPPER.treeToValue(arrayNode, " + originalClassName + "[].class);\n");
-        writer.write(INDENT + INDENT + "} catch (Exception e) {\n");
-        writer.write(INDENT + INDENT + INDENT + "throw new RuntimeException(\"Failed to parse AI response array\", e);\n");
-        writer.write(INDENT + INDENT + "}\n");
+        writer.write(INDENT + "public static " + arrayType + " createArrayByString(String inputText) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.createArray(inputText);\n");
         writer.write(INDENT + "}\n\n");
-        
+
+        writer.write(INDENT + "public static " + arrayType + " createArrayByString(String inputText, AiCallOptions options) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.createArray(inputText, options);\n");
+        writer.write(INDENT + "}\n\n");
+
+        // streamArrayByString 方法：以 SSE 流式请求，数组中每个对象一闭合就立即返回
+        writer.write(INDENT + "public static Stream<" + originalClassName + "> streamArrayByString(String inputText) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.streamArray(inputText);\n");
+        writer.write(INDENT + "}\n\n");
+
+        writer.write(INDENT + "public static Stream<" + originalClassName + "> streamArrayByString(String inputText, AiCallOptions options) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.streamArray(inputText, options);\n");
+        writer.write(INDENT + "}\n\n");
+
         // createArrayByFile 方法
-        writer.write(INDENT + "public static " + originalClassName + "[] createArrayByFile(File file) {\n");
-        writer.write(INDENT + INDENT + "try {\n");
-        writer.write(INDENT + INDENT + INDENT + "String content = Files.readString(file.toPath());\n");
-        writer.write(INDENT + INDENT + INDENT + "return createArrayByString(content);\n");
-        writer.write(INDENT + INDENT + "} catch (IOException e) {\n");
-        writer.write(INDENT + INDENT + INDENT + "throw new RuntimeException(\"Failed to read file\", e);\n");
-        writer.write(INDENT + INDENT + "}\n");
+        writer.write(INDENT + "public static " + arrayType + " createArrayByFile(File file) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.createArray(file);\n");
+        writer.write(INDENT + "}\n\n");
+
+        // 大文件分块并发处理
+        writer.write(INDENT + "public static " + arrayType + " createArrayByFile(File file, int maxChunkTokens, int overlapLines) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.createArray(file, maxChunkTokens, overlapLines);\n");
+        writer.write(INDENT + "}\n\n");
+
+        // Batch API：导出请求 JSONL，导入结果 JSONL，都按行流式处理
+        writer.write(INDENT + "public static long exportBatch(Stream<String> inputTexts, Path file) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.exportBatch(inputTexts, file);\n");
+        writer.write(INDENT + "}\n\n");
+
+        writer.write(INDENT + "public static Stream<AiBatchResult<" + originalClassName + ">> importBatch(Path file) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.importBatch(file);\n");
+        writer.write(INDENT + "}\n\n");
+
+        // 从上次导入的 getNextOffset() 处继续
+        writer.write(INDENT + "public static Stream<AiBatchResult<" + originalClassName + ">> importBatch(Path file, long offset) {\n");
+        writer.write(INDENT + INDENT + "return CLIENT.importBatch(file, offset);\n");
         writer.write(INDENT + "}\n");
     }
     
+    // 转换为 Java 字符串字面量（含引号）
+    private static String javaLiteral(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': literal.append("\\\""); break;
+                case '\\': literal.append("\\\\"); break;
+                case '\n': literal.append("\\n"); break;
+                case '\r': literal.append("\\r"); break;
+                case '\t': literal.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    // 转义为 JSON 字符串内容（不含引号）
+    static String jsonEscape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': escaped.append("\\\""); break;
+                case '\\': escaped.append("\\\\"); break;
+                case '\b': escaped.append("\\b"); break;
+                case '\f': escaped.append("\\f"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                case '\t': escaped.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+        return escaped.toString();
+    }
+
     private static class FieldInfo {
         final String name;
         final String type;
         final String description;
+        final String readExpression;
+        final String assignment;
+        final String accessor;
+        final String rules;
+        final String pattern;
+        final String invalidCondition;
         
-        FieldInfo(String name, String type, String description) {
+        FieldInfo(String name, String type, String description, String readExpression, String assignment,
+                  String accessor, String rules, String pattern, String invalidCondition) {
             this.name = name;
             this.type = type;
             this.description = description;
+            this.readExpression = readExpression;
+            this.assignment = assignment;
+            this.accessor = accessor;
+            this.rules = rules;
+            this.pattern = pattern;
+            this.invalidCondition = invalidCondition;
         }
     }
     
+    private void printWarning(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+
     private void printError(String message) {
-        processingEnv.getMessager().printError(message);
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message);
     }
 }
\ No newline at end of file
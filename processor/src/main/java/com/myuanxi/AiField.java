@@ -1,9 +0,0 @@
-package com.myuanxi;
-
-import java.lang.annotation.*;
-
-@Target(ElementType.FIELD)
-@Retention(RetentionPolicy.SOURCE)
-public @interface AiField {
-    String description() default "";
-}
\ No newline at end of file
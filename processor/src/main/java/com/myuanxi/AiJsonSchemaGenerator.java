@@ -0,0 +1,389 @@
+package com.myuanxi;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// 在编译期根据字段的 Java 类型和 @AiField 描述生成 JSON Schema（OpenAI structured outputs 的 strict 子集）：
+// 每个对象都列出全部 required 字段并禁止额外字段，嵌套的实体类型放在 $defs 中按引用复用（支持递归）
+// Map、Object、类型变量等无法用 strict 子集表达的类型会关闭 strict，此时 schema 只作为格式提示
+// @AiField 的约束写入 minimum/maximum/pattern/minItems/maxItems；strict 子集不支持字符串长度，长度要求写入 description
+final class AiJsonSchemaGenerator {
+
+    // 校验器按值的种类生成检查代码
+    enum ValueKind {
+        NUMBER,
+        STRING,
+        SEQUENCE,
+        OTHER
+    }
+
+    private final Types types;
+    private final ProcessingEnvironment processingEnv;
+    private final Map<String, String> definitionNames = new HashMap<>();
+    private final Map<String, String> definitions = new LinkedHashMap<>();
+    private boolean strict = true;
+
+    AiJsonSchemaGenerator(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+        this.types = processingEnv.getTypeUtils();
+    }
+
+    boolean isStrict() {
+        return strict;
+    }
+
+    // 类型的 object schema，leadingProperties 为额外插在最前面的属性（如微批结果的 id），格式为 "名称" -> schema
+    String objectSchema(TypeElement type, Map<String, String> leadingProperties) {
+        StringBuilder properties = new StringBuilder();
+        StringBuilder required = new StringBuilder();
+        leadingProperties.forEach((name, schema) -> appendProperty(properties, required, name, schema));
+        for (VariableElement field : fields(type)) {
+            appendProperty(properties, required, field.getSimpleName().toString(), fieldSchema(field));
+        }
+        return "{\"type\":\"object\",\"properties\":{" + properties + "},\"required\":[" + required
+                + "],\"additionalProperties\":false}";
+    }
+
+    // 根对象的 schema：在 object schema 的末尾加上收集到的 $defs
+    String rootSchema(String objectSchema) {
+        if (definitions.isEmpty()) {
+            return objectSchema;
+        }
+        return objectSchema.substring(0, objectSchema.length() - 1) + ",\"$defs\":" + definitions() + "}";
+    }
+
+    // 收集到的 $defs 对象，没有嵌套类型时返回 null
+    String definitions() {
+        if (definitions.isEmpty()) {
+            return null;
+        }
+        return "{" + definitions.entrySet().stream()
+                .map(entry -> quote(entry.getKey()) + ":" + entry.getValue())
+                .collect(Collectors.joining(",")) + "}";
+    }
+
+    // 只包含一个数组属性的包装对象 {"<name>": [item...]}
+    static String wrapperSchema(String name, String itemSchema) {
+        return "{\"type\":\"object\",\"properties\":{" + quote(name) + ":{\"type\":\"array\",\"items\":" + itemSchema
+                + "}},\"required\":[" + quote(name) + "],\"additionalProperties\":false}";
+    }
+
+    // 与 AiEntityProcessor.analyzeFields 相同的字段范围
+    static List<VariableElement> fields(TypeElement type) {
+        return type.getEnclosedElements().stream()
+                .filter(element -> element.getKind() == ElementKind.FIELD)
+                .filter(element -> !element.getModifiers().contains(Modifier.STATIC)
+                        && !element.getModifiers().contains(Modifier.TRANSIENT))
+                .map(element -> (VariableElement) element)
+                .collect(Collectors.toList());
+    }
+
+    // 单个字段的 schema，包含 @AiField 的描述和约束；strict 模式下所有字段都列在 required 中，
+    // 因此没有标记 required 的引用类型字段在类型中加上 null，基本类型和必填字段不允许 null
+    String fieldSchema(VariableElement field) {
+        TypeMirror type = field.asType();
+        TypeSchema schema = typeSchema(type);
+        AiField aiField = field.getAnnotation(AiField.class);
+        if (aiField == null) {
+            return schema.render(true, "", List.of());
+        }
+
+        List<String> keywords = new ArrayList<>();
+        String description = aiField.description();
+        ValueKind kind = valueKind(type, processingEnv);
+        if (kind == ValueKind.NUMBER) {
+            if (!Double.isInfinite(aiField.min())) {
+                keywords.add("\"minimum\":" + number(aiField.min()));
+            }
+            if (!Double.isInfinite(aiField.max())) {
+                keywords.add("\"maximum\":" + number(aiField.max()));
+            }
+        } else if (kind == ValueKind.STRING) {
+            if (!aiField.pattern().isEmpty()) {
+                keywords.add("\"pattern\":" + quote(aiField.pattern()));
+            }
+            String length = lengthHint(aiField, "characters");
+            if (length != null) {
+                description = description.isEmpty() ? length : description + " (" + length + ")";
+            }
+        } else if (kind == ValueKind.SEQUENCE && "array".equals(schema.type)) {
+            if (aiField.minLength() > 0) {
+                keywords.add("\"minItems\":" + aiField.minLength());
+            }
+            if (aiField.maxLength() != Integer.MAX_VALUE) {
+                keywords.add("\"maxItems\":" + aiField.maxLength());
+            }
+        }
+        return schema.render(!aiField.required(), description, keywords);
+    }
+
+    // 长度约束的文字说明，没有约束时返回 null
+    static String lengthHint(AiField aiField, String unit) {
+        boolean hasMin = aiField.minLength() > 0;
+        boolean hasMax = aiField.maxLength() != Integer.MAX_VALUE;
+        if (hasMin && hasMax) {
+            return aiField.minLength() + "-" + aiField.maxLength() + " " + unit;
+        }
+        if (hasMin) {
+            return "at least " + aiField.minLength() + " " + unit;
+        }
+        if (hasMax) {
+            return "at most " + aiField.maxLength() + " " + unit;
+        }
+        return null;
+    }
+
+    // 整数值不带小数部分
+    static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    static ValueKind valueKind(TypeMirror type, ProcessingEnvironment processingEnv) {
+        switch (type.getKind()) {
+            case INT:
+            case LONG:
+            case SHORT:
+            case BYTE:
+            case DOUBLE:
+            case FLOAT:
+                return ValueKind.NUMBER;
+            case ARRAY:
+                return ValueKind.SEQUENCE;
+            case DECLARED:
+                break;
+            default:
+                return ValueKind.OTHER;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        switch (element.getQualifiedName().toString()) {
+            case "java.lang.Integer":
+            case "java.lang.Long":
+            case "java.lang.Short":
+            case "java.lang.Byte":
+            case "java.lang.Double":
+            case "java.lang.Float":
+                return ValueKind.NUMBER;
+            case "java.lang.String":
+            case "java.lang.CharSequence":
+                return ValueKind.STRING;
+            default:
+                break;
+        }
+        Types types = processingEnv.getTypeUtils();
+        TypeElement collection = processingEnv.getElementUtils().getTypeElement("java.util.Collection");
+        if (collection != null && types.isSubtype(types.erasure(type), types.erasure(collection.asType()))) {
+            return ValueKind.SEQUENCE;
+        }
+        return ValueKind.OTHER;
+    }
+
+    private TypeSchema typeSchema(TypeMirror type) {
+        switch (type.getKind()) {
+            case INT:
+            case LONG:
+            case SHORT:
+            case BYTE:
+                return TypeSchema.primitive("integer");
+            case DOUBLE:
+            case FLOAT:
+                return TypeSchema.primitive("number");
+            case BOOLEAN:
+                return TypeSchema.primitive("boolean");
+            case CHAR:
+                return TypeSchema.primitive("string");
+            case ARRAY:
+                TypeMirror component = ((ArrayType) type).getComponentType();
+                if (component.getKind() == TypeKind.BYTE) {
+                    // Jackson 把 byte[] 读写为 Base64 字符串
+                    return TypeSchema.of("string");
+                }
+                return arraySchema(component);
+            case DECLARED:
+                return declaredSchema((DeclaredType) type);
+            default:
+                strict = false;
+                return TypeSchema.ANY;
+        }
+    }
+
+    // 数组元素不允许 null，元素为嵌套实体时空数组即可结束递归
+    private TypeSchema arraySchema(TypeMirror component) {
+        return TypeSchema.of("array", "\"items\":" + typeSchema(component).render(false, "", List.of()));
+    }
+
+    private TypeSchema declaredSchema(DeclaredType type) {
+        TypeElement element = (TypeElement) type.asElement();
+        String name = element.getQualifiedName().toString();
+        switch (name) {
+            case "java.lang.String":
+            case "java.lang.CharSequence":
+            case "java.lang.Character":
+            case "java.util.UUID":
+            case "java.net.URI":
+            case "java.net.URL":
+                return TypeSchema.of("string");
+            case "java.lang.Integer":
+            case "java.lang.Long":
+            case "java.lang.Short":
+            case "java.lang.Byte":
+            case "java.math.BigInteger":
+                return TypeSchema.of("integer");
+            case "java.lang.Double":
+            case "java.lang.Float":
+            case "java.math.BigDecimal":
+                return TypeSchema.of("number");
+            case "java.lang.Boolean":
+                return TypeSchema.of("boolean");
+            default:
+                break;
+        }
+        if (name.startsWith("java.time.")) {
+            // 按 ISO-8601 字符串读取（需要在 AiEntityClient.mapper() 上注册 JavaTimeModule）
+            return TypeSchema.of("string");
+        }
+        if (element.getKind() == ElementKind.ENUM) {
+            String constants = element.getEnclosedElements().stream()
+                    .filter(member -> member.getKind() == ElementKind.ENUM_CONSTANT)
+                    .map(member -> quote(member.getSimpleName().toString()))
+                    .collect(Collectors.joining(","));
+            return TypeSchema.enumeration(constants);
+        }
+        if (isSubtype(type, "java.util.Collection")) {
+            List<? extends TypeMirror> arguments = type.getTypeArguments();
+            if (arguments.size() != 1) {
+                strict = false;
+                return TypeSchema.of("array");
+            }
+            return arraySchema(arguments.get(0));
+        }
+        if (isSubtype(type, "java.util.Map")) {
+            // 任意键的对象无法在 strict 模式下表达
+            strict = false;
+            List<? extends TypeMirror> arguments = type.getTypeArguments();
+            return arguments.size() == 2
+                    ? TypeSchema.of("object", "\"additionalProperties\":" + typeSchema(arguments.get(1)).render(false, "", List.of()))
+                    : TypeSchema.of("object");
+        }
+        if (name.startsWith("java.") || name.startsWith("javax.") || element.getKind() != ElementKind.CLASS) {
+            strict = false;
+            return TypeSchema.ANY;
+        }
+        // 嵌套实体：非必填时可以为 null，递归类型因此不要求无限嵌套
+        return TypeSchema.reference(definition(element));
+    }
+
+    private String definition(TypeElement element) {
+        String qualifiedName = element.getQualifiedName().toString();
+        String defName = definitionNames.get(qualifiedName);
+        if (defName != null) {
+            return defName;
+        }
+        defName = element.getSimpleName().toString();
+        for (int i = 2; definitions.containsKey(defName); i++) {
+            defName = element.getSimpleName().toString() + i;
+        }
+        definitionNames.put(qualifiedName, defName);
+        // 先占位再生成，递归引用时直接返回名称
+        definitions.put(defName, "{}");
+        definitions.put(defName, objectSchema(element, Map.of()));
+        return defName;
+    }
+
+    private boolean isSubtype(DeclaredType type, String qualifiedName) {
+        TypeElement target = processingEnv.getElementUtils().getTypeElement(qualifiedName);
+        return target != null && types.isSubtype(types.erasure(type), types.erasure(target.asType()));
+    }
+
+    private static String quote(String value) {
+        return "\"" + AiEntityProcessor.jsonEscape(value) + "\"";
+    }
+
+    // 字段类型的 schema 结构，是否允许 null 在输出时按字段是否必填决定
+    private static final class TypeSchema {
+        static final TypeSchema ANY = new TypeSchema(null, null, null, null, false);
+
+        // JSON 类型名；为 null 时是 $ref 引用或任意值
+        private final String type;
+        // type 之后的其他关键字，如 items、additionalProperties
+        private final String members;
+        private final String enumConstants;
+        private final String ref;
+        private final boolean nullable;
+
+        private TypeSchema(String type, String members, String enumConstants, String ref, boolean nullable) {
+            this.type = type;
+            this.members = members;
+            this.enumConstants = enumConstants;
+            this.ref = ref;
+            this.nullable = nullable;
+        }
+
+        static TypeSchema primitive(String type) {
+            return new TypeSchema(type, null, null, null, false);
+        }
+
+        static TypeSchema of(String type) {
+            return new TypeSchema(type, null, null, null, true);
+        }
+
+        static TypeSchema of(String type, String members) {
+            return new TypeSchema(type, members, null, null, true);
+        }
+
+        static TypeSchema enumeration(String constants) {
+            return new TypeSchema("string", null, constants, null, true);
+        }
+
+        static TypeSchema reference(String definition) {
+            return new TypeSchema(null, null, null, definition, true);
+        }
+
+        // 引用保留 anyOf 包装，$ref 旁边不能再加 description；允许 null 的枚举需要把 null 列入 enum
+        String render(boolean allowNull, String description, List<String> keywords) {
+            boolean withNull = allowNull && nullable;
+            List<String> parts = new ArrayList<>();
+            if (!description.isEmpty()) {
+                parts.add("\"description\":" + quote(description));
+            }
+            if (ref != null) {
+                parts.add("\"anyOf\":[{\"$ref\":\"#/$defs/" + ref + "\"}" + (withNull ? ",{\"type\":\"null\"}" : "") + "]");
+            } else if (type != null) {
+                parts.add("\"type\":" + (withNull ? "[" + quote(type) + ",\"null\"]" : quote(type)));
+                if (enumConstants != null) {
+                    parts.add("\"enum\":[" + enumConstants + (withNull ? ",null" : "") + "]");
+                }
+                if (members != null) {
+                    parts.add(members);
+                }
+                parts.addAll(keywords);
+            }
+            return "{" + String.join(",", parts) + "}";
+        }
+    }
+
+    private static void appendProperty(StringBuilder properties, StringBuilder required, String name, String schema) {
+        if (properties.length() > 0) {
+            properties.append(',');
+            required.append(',');
+        }
+        properties.append(quote(name)).append(':').append(schema);
+        required.append(quote(name));
+    }
+}
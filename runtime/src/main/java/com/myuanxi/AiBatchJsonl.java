@@ -0,0 +1,208 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Batch API 的 JSONL 文件：导出时逐行写入编译期生成的请求体，导入时逐行读取结果
+// 两个方向都是流式的，内存占用只和单行大小有关，与文件行数无关
+final class AiBatchJsonl {
+
+    // Batch API 中的 url 是相对地址
+    static final String BATCH_URL = "/v1/chat/completions";
+
+    private static final byte[] CUSTOM_ID_PREFIX = AiJsonPayload.utf8("{\"custom_id\":\"");
+    private static final byte[] BODY_PREFIX = AiJsonPayload.utf8("\",\"method\":\"POST\",\"url\":\"" + BATCH_URL + "\",\"body\":");
+    private static final byte[] LINE_END = AiJsonPayload.utf8("}\n");
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private AiBatchJsonl() {
+    }
+
+    // 每个输入一行，custom_id 为输入序号；返回写入的行数
+    static long write(Stream<String> inputTexts, Path file, long firstIndex, Function<String, byte[]> requestBody) throws IOException {
+        long index = firstIndex;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE)) {
+            Iterator<String> inputs = inputTexts.iterator();
+            while (inputs.hasNext()) {
+                out.write(CUSTOM_ID_PREFIX);
+                out.write(Long.toString(index).getBytes(StandardCharsets.US_ASCII));
+                out.write(BODY_PREFIX);
+                out.write(requestBody.apply(inputs.next()));
+                out.write(LINE_END);
+                index++;
+            }
+        }
+        return index - firstIndex;
+    }
+
+    // 从 offset 开始逐行读取结果，content 为模型输出的内容；返回的 Stream 需要关闭以释放文件
+    static <T> Stream<AiBatchResult<T>> read(ObjectMapper mapper, Path file, long offset, Function<String, T> converter) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        ResultSpliterator<T> spliterator = new ResultSpliterator<>(mapper, channel, offset, converter);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to close batch file", e);
+            }
+        });
+    }
+
+    private static final class ResultSpliterator<T> extends Spliterators.AbstractSpliterator<AiBatchResult<T>> {
+        private final ObjectMapper mapper;
+        private final FileChannel channel;
+        private final Function<String, T> converter;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+        private byte[] line = new byte[8192];
+        private long position;
+
+        ResultSpliterator(ObjectMapper mapper, FileChannel channel, long offset, Function<String, T> converter) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.mapper = mapper;
+            this.channel = channel;
+            this.converter = converter;
+            this.position = offset;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super AiBatchResult<T>> action) {
+            try {
+                while (true) {
+                    int length = readLine();
+                    if (length < 0) {
+                        return false;
+                    }
+                    if (length > 0) {
+                        action.accept(parseLine(length));
+                        return true;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read batch file", e);
+            }
+        }
+
+        // 读取一行到 line 中（不含换行符），返回长度；文件结束时返回 -1
+        private int readLine() throws IOException {
+            int length = 0;
+            boolean read = false;
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    int count = channel.read(buffer);
+                    buffer.flip();
+                    if (count < 0) {
+                        return read ? trim(length) : -1;
+                    }
+                    continue;
+                }
+                read = true;
+                byte[] data = buffer.array();
+                int start = buffer.position();
+                int limit = buffer.limit();
+                int end = start;
+                while (end < limit && data[end] != '\n') {
+                    end++;
+                }
+                int chunk = end - start;
+                if (length + chunk > line.length) {
+                    line = Arrays.copyOf(line, Math.max(line.length * 2, length + chunk));
+                }
+                System.arraycopy(data, start, line, length, chunk);
+                length += chunk;
+                position += chunk;
+                if (end < limit) {
+                    buffer.position(end + 1);
+                    position++;
+                    return trim(length);
+                }
+                buffer.position(end);
+            }
+        }
+
+        private int trim(int length) {
+            return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+        }
+
+        // 结果行：{"id":..., "custom_id":"0", "response":{"status_code":200, "body":{chat completion}}, "error":null}
+        private AiBatchResult<T> parseLine(int length) {
+            long index = -1;
+            String content = null;
+            int statusCode = 0;
+            try (JsonParser parser = mapper.createParser(line, 0, length)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected JSON object in batch result line");
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("custom_id".equals(field) && value != JsonToken.VALUE_NULL) {
+                        index = Long.parseLong(parser.getText().trim());
+                    } else if ("error".equals(field) && value == JsonToken.START_OBJECT) {
+                        return AiBatchResult.failure(index,
+                                new RuntimeException("Batch request failed: " + mapper.readTree(parser)), position);
+                    } else if ("response".equals(field) && value == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String responseField = parser.currentName();
+                            if ("status_code".equals(responseField)) {
+                                parser.nextToken();
+                                statusCode = parser.getIntValue();
+                            } else if ("body".equals(responseField)) {
+                                // readContent 读到内容后就返回，跳过 body 剩余部分回到 response 这一层
+                                JsonStreamContext responseContext = parser.getParsingContext();
+                                content = AiJsonReaders.readContent(parser);
+                                while (parser.getParsingContext() != responseContext) {
+                                    parser.nextToken();
+                                }
+                            } else {
+                                parser.nextToken();
+                                parser.skipChildren();
+                            }
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                return AiBatchResult.failure(index, e, position);
+            }
+
+            if (content == null) {
+                return AiBatchResult.failure(index,
+                        new RuntimeException("Batch result has no content (status code " + statusCode + ")"), position);
+            }
+            try {
+                return AiBatchResult.success(index, converter.apply(content), position);
+            } catch (RuntimeException e) {
+                return AiBatchResult.failure(index, e, position);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.myuanxi;
+
+// Batch API 结果文件中的一行：custom_id 对应的输入序号，成功创建的对象或失败原因，
+// 以及下一行在文件中的字节偏移，保存该偏移即可从中断处继续导入
+public final class AiBatchResult<T> {
+    private final long index;
+    private final T value;
+    private final Throwable error;
+    private final long nextOffset;
+
+    private AiBatchResult(long index, T value, Throwable error, long nextOffset) {
+        this.index = index;
+        this.value = value;
+        this.error = error;
+        this.nextOffset = nextOffset;
+    }
+
+    static <T> AiBatchResult<T> success(long index, T value, long nextOffset) {
+        return new AiBatchResult<>(index, value, null, nextOffset);
+    }
+
+    static <T> AiBatchResult<T> failure(long index, Throwable error, long nextOffset) {
+        return new AiBatchResult<>(index, null, error, nextOffset);
+    }
+
+    // 导出时的输入序号；该行无法解析出 custom_id 时为 -1
+    public long getIndex() {
+        return index;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess()
+                ? "AiBatchResult{index=" + index + ", value=" + value + '}'
+                : "AiBatchResult{index=" + index + ", error=" + error + '}';
+    }
+}
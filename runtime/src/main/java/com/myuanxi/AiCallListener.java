@@ -0,0 +1,11 @@
+package com.myuanxi;
+
+// 请求统计的扩展点：每次模型请求结束（成功或失败）后调用一次，实现需要线程安全且不应阻塞
+@FunctionalInterface
+public interface AiCallListener {
+
+    AiCallListener NOOP = trace -> {
+    };
+
+    void onCall(AiCallTrace trace);
+}
@@ -0,0 +1,50 @@
+package com.myuanxi;
+
+// 单次调用的覆盖项：未设置的项使用 AiModelTiering 的选择或 @AiEntity 中的配置，值可以包含 ${NAME:default} 占位符
+// 设置了地址或密钥时直接发往该地址，不经过路由；覆盖的地址与配置的地址不同时不会使用配置的密钥，
+// 没有给出密钥的请求不带 Authorization 请求头
+public final class AiCallOptions {
+    private final String model;
+    private final String apiUrl;
+    private final String apiKey;
+
+    private AiCallOptions(String model, String apiUrl, String apiKey) {
+        this.model = model;
+        this.apiUrl = apiUrl;
+        this.apiKey = apiKey;
+    }
+
+    public static AiCallOptions model(String model) {
+        return new AiCallOptions(model, null, null);
+    }
+
+    public static AiCallOptions endpoint(String apiUrl, String apiKey) {
+        return new AiCallOptions(null, apiUrl, apiKey);
+    }
+
+    public AiCallOptions withModel(String model) {
+        return new AiCallOptions(model, apiUrl, apiKey);
+    }
+
+    public AiCallOptions withEndpoint(String apiUrl, String apiKey) {
+        return new AiCallOptions(model, apiUrl, apiKey);
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    @Override
+    public String toString() {
+        // 不输出密钥
+        return "AiCallOptions{model='" + model + "', apiUrl='" + apiUrl + "', apiKey=" + (apiKey != null ? "***" : null) + '}';
+    }
+}
@@ -0,0 +1,245 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+// 一次模型请求的统计：排队、网络、解析耗时，请求/响应大小，usage 中的 token 数，重试次数和错误类别
+// 由生成的工厂创建，调度器和解析器沿着调用链填写，结束时交给 AiMetrics 中注册的监听器
+public final class AiCallTrace {
+
+    public enum ErrorCategory {
+        TIMEOUT,
+        NETWORK,
+        RATE_LIMITED,
+        CLIENT_ERROR,
+        SERVER_ERROR,
+        API_ERROR,
+        PARSE,
+        OTHER
+    }
+
+    private final String entityType;
+    private final long startNanos = System.nanoTime();
+
+    // 字段在调用线程、传输层回调线程和调度器的延迟线程上写入，监听器可能在另一个线程读取，因此都是 volatile；
+    // 同一个计数器的写入沿着 CompletableFuture 调用链先后发生，不会并发，+= 不需要原子操作
+    private volatile long queueNanos;
+    private volatile long networkNanos;
+    private volatile long parseNanos;
+    private volatile long totalNanos;
+    private volatile long requestBytes;
+    private volatile long responseBytes;
+    private volatile long promptTokens;
+    private volatile long completionTokens;
+    private volatile long totalTokens;
+    private volatile int retries;
+    private volatile int statusCode;
+    private volatile boolean hedged;
+    private volatile String model;
+    private volatile String endpoint;
+    private volatile int failovers;
+    private volatile ErrorCategory error;
+    private boolean finished;
+
+    public AiCallTrace(String entityType) {
+        this.entityType = entityType;
+    }
+
+    public void addQueueNanos(long nanos) {
+        queueNanos += nanos;
+    }
+
+    public void addNetworkNanos(long nanos) {
+        networkNanos += nanos;
+    }
+
+    public void addParseNanos(long nanos) {
+        parseNanos += nanos;
+    }
+
+    public void setRequestBytes(long requestBytes) {
+        this.requestBytes = requestBytes;
+    }
+
+    public void setResponseBytes(long responseBytes) {
+        this.responseBytes = responseBytes;
+    }
+
+    public void setUsage(long promptTokens, long completionTokens, long totalTokens) {
+        this.promptTokens = promptTokens;
+        this.completionTokens = completionTokens;
+        this.totalTokens = totalTokens > 0 ? totalTokens : promptTokens + completionTokens;
+    }
+
+    public void incrementRetries() {
+        retries++;
+    }
+
+    public void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public void markHedged() {
+        hedged = true;
+    }
+
+    // 请求体中实际使用的模型，经过 AiModelTiering、单次调用覆盖和路由地址的替换之后
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    // 经 AiEndpointRouter 路由时实际使用的地址
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public void incrementFailovers() {
+        failovers++;
+    }
+
+    // failure 为 null 表示成功；重复调用只生效一次
+    public void finish(Throwable failure) {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            totalNanos = System.nanoTime() - startNanos;
+            error = failure == null ? null : classify(failure, statusCode);
+        }
+        AiMetrics.publish(this);
+    }
+
+    static ErrorCategory classify(Throwable failure, int statusCode) {
+        if (statusCode == 429) {
+            return ErrorCategory.RATE_LIMITED;
+        }
+        if (statusCode == 408) {
+            return ErrorCategory.TIMEOUT;
+        }
+        if (statusCode >= 500) {
+            return ErrorCategory.SERVER_ERROR;
+        }
+        if (statusCode >= 400) {
+            return ErrorCategory.CLIENT_ERROR;
+        }
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CompletionException || cause instanceof ExecutionException) {
+                continue;
+            }
+            if (cause instanceof HttpTimeoutException) {
+                return ErrorCategory.TIMEOUT;
+            }
+            if (cause instanceof JsonProcessingException) {
+                return ErrorCategory.PARSE;
+            }
+            if (cause instanceof IOException) {
+                return ErrorCategory.NETWORK;
+            }
+            String message = cause.getMessage();
+            if (message != null && message.startsWith("API Error")) {
+                return ErrorCategory.API_ERROR;
+            }
+            if (message != null && (message.startsWith("Invalid API response") || message.startsWith("Expected JSON"))) {
+                return ErrorCategory.PARSE;
+            }
+        }
+        return ErrorCategory.OTHER;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    public long getNetworkNanos() {
+        return networkNanos;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    public long getPromptTokens() {
+        return promptTokens;
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public long getTotalTokens() {
+        return totalTokens;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isHedged() {
+        return hedged;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    // 未经路由时为 null
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public int getFailovers() {
+        return failovers;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    // 成功时为 null
+    public ErrorCategory getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "AiCallTrace{" +
+                "entityType='" + entityType + '\'' +
+                ", queueNanos=" + queueNanos +
+                ", networkNanos=" + networkNanos +
+                ", parseNanos=" + parseNanos +
+                ", requestBytes=" + requestBytes +
+                ", responseBytes=" + responseBytes +
+                ", totalTokens=" + totalTokens +
+                ", retries=" + retries +
+                ", model=" + model +
+                ", endpoint=" + endpoint +
+                ", failovers=" + failovers +
+                ", error=" + error +
+                '}';
+    }
+}
@@ -0,0 +1,385 @@
+package com.myuanxi;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// 录制/回放传输层（磁带）：录制模式把请求转发给真实的传输层，并把 请求哈希 → 响应 追加写入磁带文件；
+// 回放模式内存映射磁带文件，在有序索引中二分查找请求哈希，不访问网络，可以模拟固定延迟
+// 请求哈希为 SHA-256(方法, URI, 请求体)，不包含请求头，因此磁带中不会保存 API 密钥
+//
+// 文件格式：[4 字节 magic][4 字节版本]，之后是连续的记录
+//   [32 字节 key][4 字节状态码][2 字节 Content-Type 长度][Content-Type][4 字节响应体长度][响应体]
+// close() 时在末尾写入按 key 排序的索引 [32 字节 key][8 字节记录偏移] 和尾部 [8 字节索引偏移][4 字节条目数][4 字节 magic]；
+// 没有索引的文件（录制时异常退出）回放时扫描记录重建索引
+public final class AiCassetteTransport implements AiTransport, AutoCloseable {
+
+    private static final int MAGIC = 0x41494353;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int KEY_BYTES = 32;
+    private static final int INDEX_ENTRY_BYTES = KEY_BYTES + Long.BYTES;
+    private static final int TRAILER_BYTES = Long.BYTES + 2 * Integer.BYTES;
+    private static final String DEFAULT_CONTENT_TYPE = "application/json";
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path file;
+    private final AiTransport delegate;
+    private final long latencyMillis;
+
+    // 录制模式
+    private final FileChannel channel;
+    private final Map<String, Long> recorded;
+    private long writePosition;
+
+    // 回放模式：映射的整个文件和有序索引（映射的文件区域，或扫描得到的堆内副本）
+    private final ByteBuffer data;
+    private final ByteBuffer index;
+    private final int entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private AiCassetteTransport(Path file, AiTransport delegate) throws IOException {
+        this.file = file;
+        this.delegate = delegate;
+        this.latencyMillis = 0;
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.recorded = new LinkedHashMap<>();
+        this.data = null;
+        this.index = null;
+        this.entries = 0;
+
+        long size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(header, 0);
+            writePosition = FILE_HEADER_BYTES;
+            return;
+        }
+        // 继续录制已有的磁带：保留已有记录，去掉旧索引，close() 时重新写入
+        ByteBuffer existing = map(channel, file);
+        writePosition = scan(existing, recordsEnd(existing), recorded);
+        channel.truncate(writePosition);
+    }
+
+    private AiCassetteTransport(Path file, Duration latency) throws IOException {
+        this.file = file;
+        this.delegate = null;
+        this.latencyMillis = latency == null ? 0 : Math.max(0, latency.toMillis());
+        this.channel = null;
+        this.recorded = null;
+
+        // 映射建立后关闭文件不影响映射的访问
+        try (FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            this.data = map(readChannel, file);
+        }
+        long indexOffset = indexOffset(data);
+        if (indexOffset >= 0) {
+            this.entries = data.getInt(data.limit() - TRAILER_BYTES + Long.BYTES);
+            this.index = data.slice((int) indexOffset, entries * INDEX_ENTRY_BYTES);
+        } else {
+            Map<String, Long> scanned = new LinkedHashMap<>();
+            scan(data, data.limit(), scanned);
+            this.entries = scanned.size();
+            this.index = buildIndex(scanned);
+        }
+    }
+
+    // 录制模式：请求经由 delegate 发送，2xx 响应写入磁带；已经录制过的请求不会重复写入
+    public static AiCassetteTransport record(Path file, AiTransport delegate) {
+        try {
+            return new AiCassetteTransport(file, delegate);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open cassette file: " + file, e);
+        }
+    }
+
+    // 录制模式，使用当前的默认传输层发送请求
+    public static AiCassetteTransport record(Path file) {
+        return record(file, AiEntityClient.getDefaultTransport());
+    }
+
+    public static AiCassetteTransport replay(Path file) {
+        return replay(file, Duration.ZERO);
+    }
+
+    // 回放模式：每个响应延迟 latency 后返回，用于模拟真实接口的耗时；磁带中没有的请求以 IllegalStateException 失败
+    public static AiCassetteTransport replay(Path file, Duration latency) {
+        try {
+            return new AiCassetteTransport(file, latency);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open cassette file: " + file, e);
+        }
+    }
+
+    public boolean isRecording() {
+        return delegate != null;
+    }
+
+    // 磁带中的请求数
+    public int size() {
+        if (isRecording()) {
+            synchronized (this) {
+                return recorded.size();
+            }
+        }
+        return entries;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        byte[] key = key(request);
+        return isRecording() ? record(request, handler, key) : replay(request, handler, key);
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> record(HttpRequest request, HttpResponse.BodyHandler<T> handler, byte[] key) {
+        // 录制时需要完整的响应体，流式响应会在接收完成后一次性交给 handler
+        // 去掉 Accept-Encoding，磁带中保存的是未压缩的响应体，回放时不需要 Content-Encoding
+        HttpRequest identity = HttpRequest.newBuilder(request, (name, value) -> !name.equalsIgnoreCase("Accept-Encoding")).build();
+        return delegate.send(identity, HttpResponse.BodyHandlers.ofByteArray())
+                .thenCompose(response -> {
+                    if (response.statusCode() / 100 == 2) {
+                        append(key, response.statusCode(),
+                                response.headers().firstValue("Content-Type").orElse(DEFAULT_CONTENT_TYPE), response.body());
+                    }
+                    return AiStubTransport.deliver(request, handler, response.statusCode(), response.headers(),
+                            ByteBuffer.wrap(response.body()));
+                });
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> replay(HttpRequest request, HttpResponse.BodyHandler<T> handler, byte[] key) {
+        int slot = find(key);
+        if (slot < 0) {
+            misses.increment();
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    "No recorded response in cassette " + file + " for request " + HEX.formatHex(key)));
+        }
+        hits.increment();
+
+        int position = (int) index.getLong(slot * INDEX_ENTRY_BYTES + KEY_BYTES) + KEY_BYTES;
+        int statusCode = data.getInt(position);
+        int contentTypeLength = data.getShort(position + Integer.BYTES) & 0xFFFF;
+        byte[] contentType = new byte[contentTypeLength];
+        data.get(position + Integer.BYTES + Short.BYTES, contentType);
+        int lengthPosition = position + Integer.BYTES + Short.BYTES + contentTypeLength;
+        int length = data.getInt(lengthPosition);
+        // 直接把映射区域的视图交给 BodySubscriber，不复制响应体
+        ByteBuffer body = data.slice(lengthPosition + Integer.BYTES, length);
+        HttpHeaders headers = HttpHeaders.of(
+                Map.of("Content-Type", List.of(new String(contentType, StandardCharsets.UTF_8)),
+                        "Content-Length", List.of(String.valueOf(length))),
+                (name, value) -> true);
+
+        if (latencyMillis == 0) {
+            return AiStubTransport.deliver(request, handler, statusCode, headers, body);
+        }
+        return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(latencyMillis, TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> AiStubTransport.deliver(request, handler, statusCode, headers, body));
+    }
+
+    // 在有序索引中二分查找，返回条目序号，找不到时返回 -1
+    private int find(byte[] key) {
+        int low = 0;
+        int high = entries - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(index, mid * INDEX_ENTRY_BYTES, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int compare(ByteBuffer buffer, int offset, byte[] key) {
+        for (int i = 0; i < KEY_BYTES; i++) {
+            int cmp = Byte.compareUnsigned(buffer.get(offset + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private synchronized void append(byte[] key, int statusCode, String contentType, byte[] body) {
+        String hex = HEX.formatHex(key);
+        if (channel == null || !channel.isOpen() || recorded.containsKey(hex)) {
+            return;
+        }
+        byte[] contentTypeBytes = contentType.getBytes(StandardCharsets.UTF_8);
+        if (contentTypeBytes.length > 0xFFFF) {
+            contentTypeBytes = DEFAULT_CONTENT_TYPE.getBytes(StandardCharsets.UTF_8);
+        }
+        ByteBuffer record = ByteBuffer.allocate(KEY_BYTES + Integer.BYTES + Short.BYTES + contentTypeBytes.length
+                + Integer.BYTES + body.length);
+        record.put(key).putInt(statusCode).putShort((short) contentTypeBytes.length).put(contentTypeBytes)
+                .putInt(body.length).put(body).flip();
+        long start = writePosition;
+        try {
+            writeFully(record, start);
+            writePosition = start + record.limit();
+            recorded.put(hex, start);
+        } catch (IOException e) {
+            // 写入失败不影响本次调用，丢弃写了一半的记录
+            try {
+                channel.truncate(start);
+            } catch (IOException ignored) {
+                // 回放时扫描会丢弃不完整的记录
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    private static byte[] key(HttpRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, request.method().getBytes(StandardCharsets.UTF_8));
+            update(digest, request.uri().toString().getBytes(StandardCharsets.UTF_8));
+            update(digest, AiStubTransport.readBody(request));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, byte[] bytes) {
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static ByteBuffer map(FileChannel channel, Path file) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Cassette file larger than 2 GB: " + file);
+        }
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (size < FILE_HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a cassette file: " + file);
+        }
+        if (buffer.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Unsupported cassette version " + buffer.getInt(Integer.BYTES) + ": " + file);
+        }
+        return buffer;
+    }
+
+    // 尾部有效时返回索引的偏移，否则返回 -1
+    private static long indexOffset(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        if (limit < FILE_HEADER_BYTES + TRAILER_BYTES || buffer.getInt(limit - Integer.BYTES) != MAGIC) {
+            return -1;
+        }
+        long offset = buffer.getLong(limit - TRAILER_BYTES);
+        int count = buffer.getInt(limit - TRAILER_BYTES + Long.BYTES);
+        if (count < 0 || offset < FILE_HEADER_BYTES
+                || offset + (long) count * INDEX_ENTRY_BYTES + TRAILER_BYTES != limit) {
+            return -1;
+        }
+        return offset;
+    }
+
+    private static int recordsEnd(ByteBuffer buffer) {
+        long offset = indexOffset(buffer);
+        return offset >= 0 ? (int) offset : buffer.limit();
+    }
+
+    // 扫描 [文件头, end) 之间的记录，返回最后一条完整记录的结束位置
+    private static int scan(ByteBuffer buffer, int end, Map<String, Long> records) {
+        byte[] key = new byte[KEY_BYTES];
+        int position = FILE_HEADER_BYTES;
+        while (end - position >= KEY_BYTES + Integer.BYTES + Short.BYTES) {
+            int contentTypeLength = buffer.getShort(position + KEY_BYTES + Integer.BYTES) & 0xFFFF;
+            int lengthPosition = position + KEY_BYTES + Integer.BYTES + Short.BYTES + contentTypeLength;
+            if (end - lengthPosition < Integer.BYTES) {
+                break;
+            }
+            int length = buffer.getInt(lengthPosition);
+            int next = lengthPosition + Integer.BYTES + length;
+            if (length < 0 || next > end || next < 0) {
+                break;
+            }
+            buffer.get(position, key);
+            records.putIfAbsent(HEX.formatHex(key), (long) position);
+            position = next;
+        }
+        return position;
+    }
+
+    // 十六进制小写 key 的字典序与字节的无符号序一致
+    private static ByteBuffer buildIndex(Map<String, Long> records) {
+        List<String> keys = new ArrayList<>(records.keySet());
+        keys.sort(null);
+        ByteBuffer buffer = ByteBuffer.allocate(keys.size() * INDEX_ENTRY_BYTES);
+        for (String key : keys) {
+            buffer.put(HEX.parseHex(key)).putLong(records.get(key));
+        }
+        return buffer.flip();
+    }
+
+    // 录制模式下写入索引并关闭文件
+    @Override
+    public synchronized void close() {
+        if (channel == null || !channel.isOpen()) {
+            return;
+        }
+        try {
+            ByteBuffer indexBuffer = buildIndex(recorded);
+            long indexStart = writePosition;
+            writeFully(indexBuffer, indexStart);
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES)
+                    .putLong(indexStart).putInt(recorded.size()).putInt(MAGIC).flip();
+            writeFully(trailer, indexStart + indexBuffer.limit());
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close cassette file: " + file, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AiCassetteTransport{file=" + file +
+                ", mode=" + (isRecording() ? "record" : "replay") +
+                ", size=" + size() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package com.myuanxi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+// 生成的工厂类共用的并发工具：优先使用虚拟线程，在 JDK 21 之前回退到守护线程池
+public final class AiConcurrency {
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 32;
+
+    private static final ExecutorService EXECUTOR = newExecutor();
+
+    private AiConcurrency() {
+    }
+
+    public static ExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    // 以最多 maxConcurrency 个并发执行 task，结果按输入顺序返回，单项失败不会中断整个批次
+    public static <I, O> List<AiResult<O>> mapInOrder(
+            Collection<? extends I> inputs,
+            int maxConcurrency,
+            Function<? super I, ? extends O> task
+    ) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+
+        Semaphore permits = new Semaphore(maxConcurrency);
+        List<CompletableFuture<O>> futures = new ArrayList<>(inputs.size());
+        for (I input : inputs) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(future -> future.cancel(true));
+                throw new RuntimeException("Interrupted while dispatching batch", e);
+            }
+            CompletableFuture<O> future = CompletableFuture.supplyAsync(() -> task.apply(input), EXECUTOR);
+            future.whenComplete((result, error) -> permits.release());
+            futures.add(future);
+        }
+
+        List<AiResult<O>> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<O> future : futures) {
+            try {
+                results.add(AiResult.success(future.join()));
+            } catch (CompletionException e) {
+                results.add(AiResult.failure(e.getCause() != null ? e.getCause() : e));
+            } catch (RuntimeException e) {
+                results.add(AiResult.failure(e));
+            }
+        }
+        return results;
+    }
+
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "ai-entity-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.myuanxi;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 运行时配置：解析 @AiEntity 和 AiCallOptions 中 ${NAME:default} 形式的占位符
+// 查找顺序：set() 设置的值、系统属性、load() 加载的配置文件、环境变量；都没有时使用默认值，没有默认值时为空字符串
+// 每次变化都会增加 version，AiEntityClient 在版本变化后才重新解析，平时每个请求只读取一次 version
+public final class AiConfig {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^}:]+)(?::([^}]*))?}");
+
+    private static final Map<String, String> overrides = new ConcurrentHashMap<>();
+    private static final AtomicLong version = new AtomicLong();
+
+    private static volatile Properties fileProperties = new Properties();
+    private static volatile Path file;
+    private static volatile FileTime fileModified;
+    private static ScheduledExecutorService watcher;
+    private static ScheduledFuture<?> watch;
+
+    private AiConfig() {
+    }
+
+    public static long version() {
+        return version.get();
+    }
+
+    // 替换模板中的所有占位符；没有占位符时原样返回
+    public static String resolve(String template) {
+        if (template == null || template.indexOf("${") < 0) {
+            return template;
+        }
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        StringBuilder resolved = new StringBuilder(template.length());
+        while (matcher.find()) {
+            String value = get(matcher.group(1).trim());
+            if (value == null) {
+                value = matcher.group(2) != null ? matcher.group(2) : "";
+            }
+            matcher.appendReplacement(resolved, Matcher.quoteReplacement(value));
+        }
+        matcher.appendTail(resolved);
+        return resolved.toString();
+    }
+
+    // 按查找顺序取值，没有时为 null
+    public static String get(String name) {
+        String value = overrides.get(name);
+        if (value == null) {
+            value = System.getProperty(name);
+        }
+        if (value == null) {
+            value = fileProperties.getProperty(name);
+        }
+        if (value == null) {
+            value = System.getenv(name);
+        }
+        return value;
+    }
+
+    // 在代码中覆盖某个配置项，value 为 null 时取消覆盖
+    public static void set(String name, String value) {
+        if (value == null) {
+            overrides.remove(name);
+        } else {
+            overrides.put(name, value);
+        }
+        version.incrementAndGet();
+    }
+
+    // 加载 properties 格式的配置文件，之后 reload() 和 watch() 都会重新读取该文件
+    public static synchronized void load(Path configFile) throws IOException {
+        fileProperties = read(configFile);
+        fileModified = Files.getLastModifiedTime(configFile);
+        file = configFile;
+        version.incrementAndGet();
+    }
+
+    // 重新读取配置文件（如果加载过），并让客户端重新解析占位符；修改系统属性或环境后调用
+    public static synchronized void reload() throws IOException {
+        Path configFile = file;
+        if (configFile != null) {
+            fileProperties = read(configFile);
+            fileModified = Files.getLastModifiedTime(configFile);
+        }
+        version.incrementAndGet();
+    }
+
+    // 加载配置文件，并每隔 interval 检查一次修改时间，文件变化后自动重新加载；再次调用会替换之前的检查
+    public static synchronized void watch(Path configFile, Duration interval) throws IOException {
+        load(configFile);
+        if (watch != null) {
+            watch.cancel(false);
+        }
+        if (watcher == null) {
+            watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ai-config-watcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long millis = Math.max(1, interval.toMillis());
+        watch = watcher.scheduleWithFixedDelay(AiConfig::reloadIfModified, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void unwatch() {
+        if (watch != null) {
+            watch.cancel(false);
+            watch = null;
+        }
+    }
+
+    private static synchronized void reloadIfModified() {
+        Path configFile = file;
+        if (configFile == null) {
+            return;
+        }
+        try {
+            FileTime modified = Files.getLastModifiedTime(configFile);
+            if (!modified.equals(fileModified)) {
+                reload();
+            }
+        } catch (IOException e) {
+            // 文件正在被替换或暂时不可读时保留当前配置，下次检查时再试
+        }
+    }
+
+    private static Properties read(Path configFile) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(configFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,159 @@
+package com.myuanxi;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// AiEndpointRouter 中的一个服务地址：自己的 API Key、模型和权重，限流和重试沿用该地址共享的 AiEndpointScheduler
+// 同时记录路由需要的状态：进行中的请求数、按时间衰减的峰值 EWMA 延迟，以及熔断器
+public final class AiEndpoint {
+
+    // EWMA 的时间常数：超过这个时间的旧样本权重衰减到 1/e 以下
+    private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // 请求密集时按时间衰减太慢，每个新样本至少占这个权重，冷启动时的慢样本几十个请求后就会淡出
+    private static final double MIN_SAMPLE_WEIGHT = 0.1;
+
+    private final String url;
+    private final String apiKey;
+    private final String model;
+    private final double weight;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    // 熔断截止时间，0 表示闭合；半开时由 tryStart 用 CAS 推后，保证每个冷却期只放行一个探测请求
+    private final AtomicLong openUntilMillis = new AtomicLong();
+
+    private volatile int failureThreshold = 5;
+    private volatile long openMillis = 30_000;
+
+    // 以下状态由 synchronized 方法维护
+    private boolean sampled;
+    private double ewmaNanos;
+    private long ewmaUpdatedAt;
+    private int consecutiveFailures;
+
+    private AiEndpoint(String url, String apiKey, String model, double weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Endpoint weight must be positive: " + weight);
+        }
+        this.url = url;
+        this.apiKey = apiKey;
+        this.model = model;
+        this.weight = weight;
+    }
+
+    // model 为 null 时使用实体在 @AiEntity 中配置的模型
+    public static AiEndpoint of(String url, String apiKey, String model) {
+        return new AiEndpoint(url, apiKey, model, 1);
+    }
+
+    public static AiEndpoint of(String url, String apiKey, String model, double weight) {
+        return new AiEndpoint(url, apiKey, model, weight);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    // 该地址的限流、重试和对冲配置
+    public AiEndpointScheduler getScheduler() {
+        return AiEndpointScheduler.forEndpoint(url);
+    }
+
+    // 连续失败 failureThreshold 次后熔断 openDuration，之后放行一个探测请求，成功则恢复
+    public AiEndpoint setCircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openDuration.toMillis();
+        return this;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public synchronized long getLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis((long) ewmaNanos);
+    }
+
+    public boolean isOpen() {
+        return openUntilMillis.get() > System.currentTimeMillis();
+    }
+
+    // 熔断中的地址不参与路由；冷却期已过的地址可以被选中，是否真的放行由 tryStart 决定
+    boolean isAvailable(long now) {
+        long until = openUntilMillis.get();
+        return until == 0 || until <= now;
+    }
+
+    // EWMA 延迟乘以进行中的请求数再除以权重；没有延迟样本时只看请求数，新地址因此会先被探测
+    synchronized double score(AiEndpointRouter.Policy policy) {
+        double load = (outstanding.get() + 1) / weight;
+        return policy == AiEndpointRouter.Policy.EWMA ? (ewmaNanos + 1) * load : load;
+    }
+
+    // 半开状态下先把截止时间 CAS 推后一个冷却期，成功的请求成为唯一的探测请求；
+    // 返回 false 表示地址仍在熔断或探测名额已被其他请求抢走，调用方应换一个地址
+    boolean tryStart(long now) {
+        long until = openUntilMillis.get();
+        if (until != 0 && (until > now || !openUntilMillis.compareAndSet(until, now + openMillis))) {
+            return false;
+        }
+        outstanding.incrementAndGet();
+        return true;
+    }
+
+    synchronized void succeeded(long latencyNanos) {
+        outstanding.decrementAndGet();
+        record(latencyNanos);
+        consecutiveFailures = 0;
+        openUntilMillis.set(0);
+    }
+
+    // 失败的耗时同样计入 EWMA，变慢或超时的地址会更少被选中
+    synchronized void failed(long latencyNanos) {
+        outstanding.decrementAndGet();
+        record(latencyNanos);
+        // 探测失败时连续失败数仍不低于阈值，会重新熔断一个冷却期
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            openUntilMillis.set(System.currentTimeMillis() + openMillis);
+        }
+    }
+
+    // 峰值敏感：比当前均值慢的样本立即生效，变快则按时间逐渐衰减
+    private void record(long latencyNanos) {
+        long now = System.nanoTime();
+        if (!sampled || latencyNanos > ewmaNanos) {
+            ewmaNanos = latencyNanos;
+        } else {
+            double weight = Math.max(MIN_SAMPLE_WEIGHT,
+                    1 - Math.exp(-(double) Math.max(0, now - ewmaUpdatedAt) / DECAY_NANOS));
+            ewmaNanos = ewmaNanos * (1 - weight) + latencyNanos * weight;
+        }
+        ewmaUpdatedAt = now;
+        sampled = true;
+    }
+
+    @Override
+    public String toString() {
+        return "AiEndpoint{" +
+                "url='" + url + '\'' +
+                ", model='" + model + '\'' +
+                ", weight=" + weight +
+                ", outstanding=" + outstanding.get() +
+                ", latencyMillis=" + getLatencyMillis() +
+                ", open=" + isOpen() +
+                '}';
+    }
+}
@@ -0,0 +1,174 @@
+package com.myuanxi;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// 多个服务地址之间的路由：按策略选出得分最低的可用地址，失败（连接错误、408/429/5xx）后换下一个地址重发
+// 每个地址先经过自己的 AiEndpointScheduler 限流和重试，重试用尽后才故障转移；需要更快切换时可调低该地址的重试次数
+public final class AiEndpointRouter {
+
+    public enum Policy {
+        // 进行中的请求数最少（按权重折算）
+        LEAST_OUTSTANDING,
+        // 峰值 EWMA 延迟 × 进行中的请求数最小（按权重折算）
+        EWMA
+    }
+
+    private final Policy policy;
+    private final List<AiEndpoint> endpoints;
+    private volatile int maxFailovers;
+
+    private AiEndpointRouter(Policy policy, List<AiEndpoint> endpoints) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        this.policy = policy;
+        this.endpoints = List.copyOf(endpoints);
+        this.maxFailovers = this.endpoints.size() - 1;
+    }
+
+    public static AiEndpointRouter of(Policy policy, AiEndpoint... endpoints) {
+        return new AiEndpointRouter(policy, List.of(endpoints));
+    }
+
+    public static AiEndpointRouter of(Policy policy, List<AiEndpoint> endpoints) {
+        return new AiEndpointRouter(policy, endpoints);
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public List<AiEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    // 一个请求最多换几次地址，默认每个地址最多尝试一次
+    public AiEndpointRouter setMaxFailovers(int maxFailovers) {
+        this.maxFailovers = Math.max(0, maxFailovers);
+        return this;
+    }
+
+    // 缓冲整个响应体的请求，启用对冲的地址按 p95 延迟发送对冲请求；requests 为选中的地址构造请求
+    public CompletableFuture<HttpResponse<String>> send(
+            AiTransport transport, Function<AiEndpoint, HttpRequest> requests, AiCallTrace trace) {
+        return route(requests, (endpoint, request) -> endpoint.getScheduler().send(transport, request, trace),
+                new HashSet<>(), null, trace);
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> send(
+            AiTransport transport, Function<AiEndpoint, HttpRequest> requests,
+            HttpResponse.BodyHandler<T> handler, AiCallTrace trace) {
+        return send(transport, requests, handler, trace, false);
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> send(
+            AiTransport transport, Function<AiEndpoint, HttpRequest> requests,
+            HttpResponse.BodyHandler<T> handler, AiCallTrace trace, boolean hedge) {
+        return route(requests, (endpoint, request) -> endpoint.getScheduler().send(transport, request, handler, trace, hedge),
+                new HashSet<>(), null, trace);
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> route(
+            Function<AiEndpoint, HttpRequest> requests,
+            BiFunction<AiEndpoint, HttpRequest, CompletableFuture<HttpResponse<T>>> sender,
+            Set<AiEndpoint> tried, Throwable lastError, AiCallTrace trace) {
+        long now = System.currentTimeMillis();
+        AiEndpoint endpoint = start(tried, now);
+        if (endpoint == null) {
+            // 全部熔断或都已尝试过：返回最后一次的错误，没有时快速失败
+            return CompletableFuture.failedFuture(lastError != null
+                    ? lastError
+                    : new IOException("No available endpoint among " + endpoints.size()));
+        }
+        tried.add(endpoint);
+        if (trace != null) {
+            trace.setEndpoint(endpoint.getUrl());
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<T>> sent;
+        try {
+            sent = sender.apply(endpoint, requests.apply(endpoint));
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        return sent.handle((response, error) -> {
+                    long latency = System.nanoTime() - start;
+                    if (error == null && !isFailure(response.statusCode())) {
+                        endpoint.succeeded(latency);
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    endpoint.failed(latency);
+                    if (tried.size() > maxFailovers) {
+                        return error == null
+                                ? CompletableFuture.completedFuture(response)
+                                : CompletableFuture.<HttpResponse<T>>failedFuture(AiEndpointScheduler.unwrap(error));
+                    }
+                    if (error == null) {
+                        AiEndpointScheduler.discard(response.body());
+                    }
+                    if (trace != null) {
+                        trace.incrementFailovers();
+                    }
+                    Throwable failure = error != null
+                            ? AiEndpointScheduler.unwrap(error)
+                            : new IOException("Endpoint " + endpoint.getUrl() + " returned status " + response.statusCode());
+                    return route(requests, sender, tried, failure, trace);
+                })
+                .thenCompose(future -> future);
+    }
+
+    // 选出地址并登记为进行中；半开地址的探测名额被其他请求抢走时跳过它重新选择
+    private AiEndpoint start(Set<AiEndpoint> tried, long now) {
+        Set<AiEndpoint> excluded = tried;
+        while (true) {
+            AiEndpoint endpoint = select(excluded, now);
+            if (endpoint == null || endpoint.tryStart(now)) {
+                return endpoint;
+            }
+            if (excluded == tried) {
+                excluded = new HashSet<>(tried);
+            }
+            excluded.add(endpoint);
+        }
+    }
+
+    // 从随机位置开始遍历，得分相同时不会总是选中第一个地址
+    AiEndpoint select(Set<AiEndpoint> excluded, long now) {
+        int size = endpoints.size();
+        int offset = size > 1 ? ThreadLocalRandom.current().nextInt(size) : 0;
+        AiEndpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            AiEndpoint endpoint = endpoints.get((offset + i) % size);
+            if (excluded.contains(endpoint) || !endpoint.isAvailable(now)) {
+                continue;
+            }
+            double score = endpoint.score(policy);
+            if (score < bestScore) {
+                best = endpoint;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // 这些状态说明该地址暂时不可用，换一个地址可能成功；其他 4xx 是请求本身的问题，不做故障转移
+    private static boolean isFailure(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    @Override
+    public String toString() {
+        return "AiEndpointRouter{policy=" + policy + ", endpoints=" + endpoints + '}';
+    }
+}
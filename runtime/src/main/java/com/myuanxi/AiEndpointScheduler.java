@@ -0,0 +1,469 @@
+package com.myuanxi;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 每个 API 地址一个调度器：令牌桶限流（每分钟请求数和 token 数）、遵守 Retry-After 和 x-ratelimit-* 响应头、
+// 带抖动的指数退避重试，以及可选的对冲请求（超过 p95 延迟时再发一个相同请求，先返回的生效）
+public final class AiEndpointScheduler {
+
+    private static final Map<String, AiEndpointScheduler> SCHEDULERS = new ConcurrentHashMap<>();
+    // 没有做过任何配置的调度器空闲超过该时间后从表中移除，它只有限流窗口、暂停时间和延迟样本这些会自然过期的状态
+    private static final long IDLE_EVICT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+    // 限流、暂停和空闲清理使用的毫秒时钟，测试中可以替换；实际的等待仍然按真实时间进行
+    private static volatile LongSupplier clock = System::currentTimeMillis;
+
+    private final String endpoint;
+    private final TokenBucket requests = new TokenBucket();
+    private final TokenBucket tokens = new TokenBucket();
+    private final LatencyWindow latencies = new LatencyWindow(256);
+
+    private volatile int maxRetries = 3;
+    private volatile long baseBackoffMillis = 500;
+    private volatile long maxBackoffMillis = 30_000;
+    private volatile boolean hedging;
+    private volatile long pausedUntilMillis;
+    // 调用过任一 set 方法的调度器一直保留，配置不会因空闲而丢失
+    private volatile boolean configured;
+    private volatile long lastUsedMillis = now();
+
+    private AiEndpointScheduler(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    static void setClock(LongSupplier clock) {
+        AiEndpointScheduler.clock = clock;
+    }
+
+    private static long now() {
+        return clock.getAsLong();
+    }
+
+    // 调用方每次使用时都应重新获取，不要长期持有：空闲的调度器被移除后，同一地址会得到新的实例
+    public static AiEndpointScheduler forEndpoint(String endpoint) {
+        AiEndpointScheduler scheduler = SCHEDULERS.get(endpoint);
+        if (scheduler != null) {
+            return scheduler;
+        }
+        // 只在新增地址时清理，表的大小因此受限于已配置的地址加上最近使用过的地址
+        evictIdle(now());
+        return SCHEDULERS.computeIfAbsent(endpoint, AiEndpointScheduler::new);
+    }
+
+    private static void evictIdle(long now) {
+        for (AiEndpointScheduler scheduler : SCHEDULERS.values()) {
+            if (!scheduler.configured && scheduler.pausedUntilMillis <= now
+                    && now - scheduler.lastUsedMillis > IDLE_EVICT_MILLIS) {
+                SCHEDULERS.remove(scheduler.endpoint, scheduler);
+            }
+        }
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    // 0 表示不限制
+    public AiEndpointScheduler setRequestsPerMinute(int requestsPerMinute) {
+        configured = true;
+        requests.setPerMinute(requestsPerMinute);
+        return this;
+    }
+
+    public AiEndpointScheduler setTokensPerMinute(int tokensPerMinute) {
+        configured = true;
+        tokens.setPerMinute(tokensPerMinute);
+        return this;
+    }
+
+    public AiEndpointScheduler setMaxRetries(int maxRetries) {
+        configured = true;
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public AiEndpointScheduler setBackoff(Duration base, Duration max) {
+        configured = true;
+        this.baseBackoffMillis = base.toMillis();
+        this.maxBackoffMillis = max.toMillis();
+        return this;
+    }
+
+    public AiEndpointScheduler setHedging(boolean hedging) {
+        configured = true;
+        this.hedging = hedging;
+        return this;
+    }
+
+    // 缓冲整个响应体的请求，启用对冲时按 p95 延迟发送对冲请求
+    public CompletableFuture<HttpResponse<String>> send(AiTransport transport, HttpRequest request) {
+        return send(transport, request, (AiCallTrace) null);
+    }
+
+    // trace 不为 null 时记录排队和网络耗时、重试次数以及是否发送了对冲请求
+    public CompletableFuture<HttpResponse<String>> send(AiTransport transport, HttpRequest request, AiCallTrace trace) {
+        return schedule(transport, request, HttpResponse.BodyHandlers.ofString(), true, 0, trace);
+    }
+
+    // 其他响应体（如流式响应）只做限流和重试
+    public <T> CompletableFuture<HttpResponse<T>> send(AiTransport transport, HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return send(transport, request, handler, null);
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> send(
+            AiTransport transport, HttpRequest request, HttpResponse.BodyHandler<T> handler, AiCallTrace trace) {
+        return schedule(transport, request, handler, false, 0, trace);
+    }
+
+    // hedge 为 true 时任意响应体都参与对冲；对 ofInputStream 这类在响应头到达时完成的 handler，p95 统计的是首字节延迟
+    public <T> CompletableFuture<HttpResponse<T>> send(
+            AiTransport transport, HttpRequest request, HttpResponse.BodyHandler<T> handler, AiCallTrace trace, boolean hedge) {
+        return schedule(transport, request, handler, hedge, 0, trace);
+    }
+
+    // 等待结果并还原受检异常，供同步调用使用
+    public static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> schedule(
+            AiTransport transport, HttpRequest request, HttpResponse.BodyHandler<T> handler,
+            boolean hedge, int attempt, AiCallTrace trace) {
+        long scheduledAt = System.nanoTime();
+        if (trace != null && attempt == 0) {
+            trace.setRequestBytes(request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(-1L));
+        }
+        long delay = reserve(request);
+        Executor executor = delay > 0
+                ? CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                : Runnable::run;
+
+        return CompletableFuture.supplyAsync(() -> null, executor)
+                .thenCompose(ignored -> {
+                    if (trace == null) {
+                        return dispatch(transport, request, handler, hedge, null);
+                    }
+                    long sentAt = System.nanoTime();
+                    trace.addQueueNanos(sentAt - scheduledAt);
+                    return dispatch(transport, request, handler, hedge, trace)
+                            .whenComplete((response, error) -> trace.addNetworkNanos(System.nanoTime() - sentAt));
+                })
+                .handle((response, error) -> {
+                    if (error == null) {
+                        updateFromHeaders(response.headers());
+                        if (!isRetryable(response.statusCode()) || attempt >= maxRetries) {
+                            return CompletableFuture.completedFuture(response);
+                        }
+                        discard(response.body());
+                        long wait = Math.max(backoff(attempt), retryAfterMillis(response.headers()));
+                        return retry(transport, request, handler, hedge, attempt, wait, trace);
+                    }
+                    if (attempt >= maxRetries || !(unwrap(error) instanceof IOException)) {
+                        return CompletableFuture.<HttpResponse<T>>failedFuture(unwrap(error));
+                    }
+                    return retry(transport, request, handler, hedge, attempt, backoff(attempt), trace);
+                })
+                .thenCompose(future -> future);
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> retry(
+            AiTransport transport, HttpRequest request, HttpResponse.BodyHandler<T> handler,
+            boolean hedge, int attempt, long waitMillis, AiCallTrace trace) {
+        if (trace != null) {
+            // 退避等待计入排队耗时
+            trace.incrementRetries();
+            trace.addQueueNanos(TimeUnit.MILLISECONDS.toNanos(waitMillis));
+        }
+        return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(waitMillis, TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> schedule(transport, request, handler, hedge, attempt + 1, trace));
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> dispatch(
+            AiTransport transport, HttpRequest request, HttpResponse.BodyHandler<T> handler, boolean hedge, AiCallTrace trace) {
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<T>> primary = transport.send(request, handler);
+        if (hedge) {
+            primary.thenAccept(response -> latencies.record(System.nanoTime() - start));
+        }
+
+        long p95 = hedge && hedging ? latencies.p95Millis() : -1;
+        if (p95 < 0) {
+            return primary;
+        }
+
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        primary.whenComplete((response, error) -> complete(result, outstanding, response, error));
+        CompletableFuture.delayedExecutor(p95, TimeUnit.MILLISECONDS).execute(() -> {
+            // 对冲请求同样占用限流配额，配额不足时放弃对冲
+            if (result.isDone() || !tryReserve(request)) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            if (trace != null) {
+                trace.markHedged();
+            }
+            transport.send(request, handler)
+                    .whenComplete((response, error) -> complete(result, outstanding, response, error));
+        });
+        return result;
+    }
+
+    // 对冲时两个请求中先成功的生效，另一个的响应体被丢弃；只有都失败时才返回错误
+    private static <T> void complete(CompletableFuture<HttpResponse<T>> result, AtomicInteger outstanding,
+                                     HttpResponse<T> response, Throwable error) {
+        int remaining = outstanding.decrementAndGet();
+        if (error == null) {
+            if (!result.complete(response)) {
+                discard(response.body());
+            }
+        } else if (remaining == 0) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    private long reserve(HttpRequest request) {
+        long now = now();
+        lastUsedMillis = now;
+        long wait = Math.max(0, pausedUntilMillis - now);
+        wait = Math.max(wait, requests.reserve(1, now));
+        wait = Math.max(wait, tokens.reserve(estimateTokens(request), now));
+        return wait;
+    }
+
+    private boolean tryReserve(HttpRequest request) {
+        long now = now();
+        return pausedUntilMillis <= now && requests.tryReserve(1, now) && tokens.tryReserve(estimateTokens(request), now);
+    }
+
+    // 按请求体字节数粗略估算 token 数（中文约 3 字节一个 token，英文约 4 字节）
+    private static long estimateTokens(HttpRequest request) {
+        return request.bodyPublisher()
+                .map(HttpRequest.BodyPublisher::contentLength)
+                .filter(length -> length > 0)
+                .map(length -> length / 3 + 1)
+                .orElse(1L);
+    }
+
+    private void updateFromHeaders(HttpHeaders headers) {
+        long now = now();
+        headers.firstValue("x-ratelimit-remaining-requests").flatMap(AiEndpointScheduler::parseLong).ifPresent(remaining -> {
+            requests.limitAvailable(remaining, now);
+            if (remaining == 0) {
+                pauseFor(headers.firstValue("x-ratelimit-reset-requests"), now);
+            }
+        });
+        headers.firstValue("x-ratelimit-remaining-tokens").flatMap(AiEndpointScheduler::parseLong).ifPresent(remaining -> {
+            tokens.limitAvailable(remaining, now);
+            if (remaining == 0) {
+                pauseFor(headers.firstValue("x-ratelimit-reset-tokens"), now);
+            }
+        });
+        long retryAfter = retryAfterMillis(headers);
+        if (retryAfter > 0) {
+            pausedUntilMillis = Math.max(pausedUntilMillis, now + retryAfter);
+        }
+    }
+
+    private void pauseFor(Optional<String> reset, long now) {
+        reset.map(AiEndpointScheduler::parseDurationMillis)
+                .filter(millis -> millis > 0)
+                .ifPresent(millis -> pausedUntilMillis = Math.max(pausedUntilMillis, now + millis));
+    }
+
+    private static long retryAfterMillis(HttpHeaders headers) {
+        Optional<String> retryAfter = headers.firstValue("retry-after-ms");
+        if (retryAfter.isPresent()) {
+            return parseLong(retryAfter.get()).orElse(0L);
+        }
+        return headers.firstValue("retry-after").map(value -> {
+            Optional<Long> seconds = parseLong(value);
+            if (seconds.isPresent()) {
+                return seconds.get() * 1000;
+            }
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, date.toInstant().toEpochMilli() - now());
+            } catch (RuntimeException e) {
+                return 0L;
+            }
+        }).orElse(0L);
+    }
+
+    // 解析 "1s"、"6m0s"、"120ms" 这类时长
+    static long parseDurationMillis(String value) {
+        Matcher matcher = DURATION_PART.matcher(value.trim());
+        double millis = 0;
+        boolean matched = false;
+        while (matcher.find()) {
+            matched = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "ms": millis += amount; break;
+                case "s": millis += amount * 1000; break;
+                case "m": millis += amount * 60_000; break;
+                default: millis += amount * 3_600_000; break;
+            }
+        }
+        if (!matched) {
+            return parseLong(value).map(seconds -> seconds * 1000).orElse(0L);
+        }
+        return (long) Math.ceil(millis);
+    }
+
+    private static Optional<Long> parseLong(String value) {
+        try {
+            return Optional.of(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode == 500
+                || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    // 带抖动的指数退避：在 [上限/2, 上限] 之间随机
+    private long backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    static void discard(Object body) {
+        try {
+            if (body instanceof AutoCloseable) {
+                ((AutoCloseable) body).close();
+            }
+        } catch (Exception ignored) {
+            // 丢弃的响应体关闭失败不影响结果
+        }
+    }
+
+    // 令牌桶：容量为每分钟配额，按毫秒匀速补充；reserve 可以预支，返回需要等待的毫秒数
+    private static final class TokenBucket {
+        private int perMinute;
+        private double available;
+        private long updatedAt;
+
+        synchronized void setPerMinute(int perMinute) {
+            this.perMinute = Math.max(0, perMinute);
+            this.available = this.perMinute;
+            this.updatedAt = now();
+        }
+
+        synchronized long reserve(long permits, long now) {
+            if (perMinute == 0) {
+                return 0;
+            }
+            refill(now);
+            available -= Math.min(permits, perMinute);
+            return available >= 0 ? 0 : (long) Math.ceil(-available * 60_000 / perMinute);
+        }
+
+        synchronized boolean tryReserve(long permits, long now) {
+            if (perMinute == 0) {
+                return true;
+            }
+            refill(now);
+            if (available < permits) {
+                return false;
+            }
+            available -= permits;
+            return true;
+        }
+
+        // 服务端返回的剩余配额更少时以服务端为准
+        synchronized void limitAvailable(long remaining, long now) {
+            if (perMinute == 0) {
+                return;
+            }
+            refill(now);
+            available = Math.min(available, remaining);
+        }
+
+        private void refill(long now) {
+            if (now > updatedAt) {
+                available = Math.min(perMinute, available + (now - updatedAt) * perMinute / 60_000.0);
+                updatedAt = now;
+            }
+        }
+    }
+
+    // 最近 N 次请求的延迟，用于计算 p95；样本不足时不对冲
+    private static final class LatencyWindow {
+        private static final int MIN_SAMPLES = 20;
+
+        private final long[] samples;
+        private int count;
+        private int next;
+        private long cachedP95 = -1;
+        private int sinceComputed;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            sinceComputed++;
+        }
+
+        synchronized long p95Millis() {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            if (cachedP95 < 0 || sinceComputed >= 32) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                cachedP95 = TimeUnit.NANOSECONDS.toMillis(sorted[(int) Math.ceil(count * 0.95) - 1]);
+                sinceComputed = 0;
+            }
+            return cachedP95;
+        }
+    }
+}
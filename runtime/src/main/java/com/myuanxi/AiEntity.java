@@ -0,0 +1,24 @@
+package com.myuanxi;
+
+import java.lang.annotation.*;
+
+// 保留到 class 文件：Gradle 的聚合式增量处理需要从未重新编译的类中找出带注解的实体
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface AiEntity {
+    String model();
+    String url();
+    String apikey();
+
+    // 响应格式：默认 JSON_OBJECT，所有兼容 OpenAI 的服务端和模型都支持；
+    // JSON_SCHEMA 发送编译期生成的 strict JSON Schema，需要支持 structured outputs 的模型（如 gpt-4o-mini，gpt-3.5-turbo 不支持）
+    ResponseFormat responseFormat() default ResponseFormat.JSON_OBJECT;
+
+    // 精简系统提示：字段说明只放在 schema 中（JSON_OBJECT 时只保留字段名和描述），减少输入 token
+    boolean compactPrompt() default false;
+
+    enum ResponseFormat {
+        JSON_OBJECT,
+        JSON_SCHEMA
+    }
+}
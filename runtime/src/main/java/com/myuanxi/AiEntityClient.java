@@ -0,0 +1,1022 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// 生成的工厂委托的运行时实现：每个 @AiEntity 类一个实例，持有编译期生成的提示和请求体模板以及该类的流式读取器
+// 所有实例共用同一个 ObjectMapper 和默认传输层
+public final class AiEntityClient<T> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // 校验失败后针对不合法字段重新请求的最大次数
+    private static final int MAX_REPAIR_ATTEMPTS = 2;
+
+    private static volatile AiTransport defaultTransport;
+    private static volatile AiEndpointRouter defaultRouter;
+    private static volatile boolean responseCompression = true;
+
+    private final String entityType;
+    // @AiEntity 中的原始配置，可能包含 ${NAME:default} 占位符，由 AiConfig 在运行时解析
+    private final String model;
+    private final String apiUrl;
+    private final String apiKey;
+    private final double temperature;
+    private final String systemPrompt;
+    private final byte[] payloadPrefix;
+    private final byte[] payloadSuffix;
+    private final byte[] arrayPayloadPrefix;
+    private final byte[] arrayPayloadSuffix;
+    private final byte[] arrayStreamPayloadSuffix;
+    private final byte[] batchPayloadPrefix;
+    private final byte[] batchPayloadSuffix;
+    // 缓存 key 覆盖完整的请求模板（模型、提示、schema、温度），模板变化后不会命中旧的结果
+    private final String cacheScope;
+    private final String arrayCacheScope;
+    private final AiEntityReader<T> reader;
+    private final IntFunction<T[]> arrayFactory;
+    private final AiEntityValidator<T> validator;
+    private final AiEntityMerger<T> merger;
+    private final List<String> fieldNames;
+    private final List<String> fieldRules;
+    private final List<JsonNode> fieldSchemas;
+    private final JsonNode schemaDefinitions;
+    private final boolean repairStrict;
+
+    // 编译期请求体模板开头的 {"model":"..." 部分，模型为原始配置
+    private final byte[] templateModelField;
+
+    private volatile Settings settings;
+    private volatile AiTransport transport;
+    private volatile AiEndpointRouter router;
+    private volatile AiModelTiering tiering;
+    private volatile AiResponseCache cache;
+    private volatile AiMicroBatcher<String> batcher;
+
+    private AiEntityClient(Builder<T> builder) {
+        this.entityType = builder.entityType;
+        this.model = builder.model;
+        this.apiUrl = builder.apiUrl;
+        this.apiKey = builder.apiKey;
+        this.temperature = builder.temperature;
+        this.systemPrompt = builder.systemPrompt;
+        this.payloadPrefix = AiJsonPayload.utf8(builder.payloadPrefix);
+        this.payloadSuffix = AiJsonPayload.utf8(builder.payloadSuffix);
+        this.arrayPayloadPrefix = AiJsonPayload.utf8(builder.arrayPayloadPrefix);
+        this.arrayPayloadSuffix = AiJsonPayload.utf8(builder.arrayPayloadSuffix);
+        this.arrayStreamPayloadSuffix = AiJsonPayload.utf8(builder.arrayStreamPayloadSuffix);
+        this.batchPayloadPrefix = AiJsonPayload.utf8(builder.batchPayloadPrefix);
+        this.batchPayloadSuffix = AiJsonPayload.utf8(builder.batchPayloadSuffix);
+        this.cacheScope = builder.payloadPrefix + builder.payloadSuffix;
+        this.arrayCacheScope = builder.arrayPayloadPrefix + builder.arrayPayloadSuffix;
+        this.reader = builder.reader;
+        this.arrayFactory = builder.arrayFactory;
+        this.templateModelField = modelField(model);
+        this.validator = builder.validator;
+        this.merger = builder.merger;
+        this.fieldNames = builder.fieldNames;
+        this.fieldRules = builder.fieldRules;
+        this.fieldSchemas = builder.fieldSchemas;
+        this.schemaDefinitions = builder.schemaDefinitions;
+        this.repairStrict = builder.repairStrict;
+    }
+
+    public static <T> Builder<T> builder(String entityType, AiEntityReader<T> reader, IntFunction<T[]> arrayFactory) {
+        return new Builder<>(entityType, reader, arrayFactory);
+    }
+
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
+    // 未单独设置传输层的实例使用该值，默认是共享的 AiHttpTransport
+    public static AiTransport getDefaultTransport() {
+        AiTransport current = defaultTransport;
+        return current != null ? current : AiHttpTransport.getShared();
+    }
+
+    public static void setDefaultTransport(AiTransport transport) {
+        defaultTransport = transport;
+    }
+
+    // 未单独设置路由的实例使用该值；为 null 时直接发往 @AiEntity 中配置的地址
+    public static AiEndpointRouter getDefaultRouter() {
+        return defaultRouter;
+    }
+
+    public static void setDefaultRouter(AiEndpointRouter router) {
+        defaultRouter = router;
+    }
+
+    // 非流式请求是否声明 Accept-Encoding: gzip, deflate；服务端不压缩时没有影响
+    public static boolean isResponseCompression() {
+        return responseCompression;
+    }
+
+    public static void setResponseCompression(boolean enabled) {
+        responseCompression = enabled;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public String getSystemPrompt() {
+        return systemPrompt;
+    }
+
+    // 当前配置的地址对应的调度器；地址随 AiConfig 变化时返回新地址的调度器
+    public AiEndpointScheduler getScheduler() {
+        return AiEndpointScheduler.forEndpoint(settings().apiUrl);
+    }
+
+    // 解析占位符后的模型、地址和密钥
+    public String getModel() {
+        return settings().model;
+    }
+
+    public String getApiUrl() {
+        return settings().apiUrl;
+    }
+
+    // null 表示不分级，始终使用配置的模型
+    public void setModelTiering(AiModelTiering modelTiering) {
+        tiering = modelTiering;
+    }
+
+    // AiConfig 的版本变化后重新解析；并发时可能重复解析，结果相同
+    private Settings settings() {
+        Settings current = settings;
+        long version = AiConfig.version();
+        if (current == null || current.version != version) {
+            current = new Settings(version, AiConfig.resolve(model), AiConfig.resolve(apiUrl), AiConfig.resolve(apiKey), this);
+            settings = current;
+        }
+        return current;
+    }
+
+    // null 表示使用默认传输层
+    public void setTransport(AiTransport entityTransport) {
+        transport = entityTransport;
+    }
+
+    private AiTransport activeTransport() {
+        AiTransport current = transport;
+        return current != null ? current : getDefaultTransport();
+    }
+
+    // null 表示使用默认路由
+    public void setRouter(AiEndpointRouter entityRouter) {
+        router = entityRouter;
+    }
+
+    private AiEndpointRouter activeRouter() {
+        AiEndpointRouter current = router;
+        return current != null ? current : defaultRouter;
+    }
+
+    // 缓存配置：未单独设置时使用 AiResponseCache.getDefault()，两者都为 null 时不缓存
+    public void setCache(AiResponseCache responseCache) {
+        cache = responseCache;
+    }
+
+    private AiResponseCache activeCache() {
+        AiResponseCache responseCache = cache;
+        return responseCache != null ? responseCache : AiResponseCache.getDefault();
+    }
+
+    // key 中的模型和地址是实际使用的模型和地址，分级或覆盖选择了其他模型、地址时不会命中配置的结果
+    private String cacheKey(Call call, String inputText, boolean array) {
+        return AiResponseCache.key(call.effectiveModel(), call.effectiveUrl(),
+                array ? arrayCacheScope : cacheScope, inputText, temperature);
+    }
+
+    // 确定一次调用的模型和地址：单次调用的覆盖优先，其次是分级选择，最后是配置的模型
+    private Call call(String inputText, boolean array, AiCallOptions options) {
+        Settings current = settings();
+        String callModel = options != null && options.getModel() != null ? AiConfig.resolve(options.getModel()) : null;
+        if (callModel == null) {
+            AiModelTiering modelTiering = tiering;
+            callModel = modelTiering != null ? modelTiering.select(inputText, array) : null;
+        }
+        if (options == null || (options.getApiUrl() == null && options.getApiKey() == null)) {
+            return new Call(current, callModel, null, null);
+        }
+        return new Call(current, callModel, AiConfig.resolve(options.getApiUrl()), AiConfig.resolve(options.getApiKey()));
+    }
+
+    private Call defaultCall() {
+        return new Call(settings(), null, null, null);
+    }
+
+    // 微批处理：并发的单对象请求最多攒 maxItems 个或等待 maxDelayMillis 毫秒后合并为一次请求
+    public void enableBatching(int maxItems, long maxDelayMillis) {
+        batcher = new AiMicroBatcher<>(maxItems, maxDelayMillis, this::sendBatchAsync, this::sendRequestAsync);
+    }
+
+    public void disableBatching() {
+        batcher = null;
+    }
+
+    public T create(String inputText) {
+        return create(inputText, null);
+    }
+
+    // 不缓存也不微批处理时，直接从响应解析器的字符缓冲区解析内容，不生成中间的 String
+    public T create(String inputText, AiCallOptions options) {
+        Call call = call(inputText, false, options);
+        if (activeCache() == null && (batcher == null || !call.isDefault())) {
+            return validate(inputText, sendPayload(requestBody(call, inputText, false), call, this::parse));
+        }
+        return validate(inputText, callAI(call, inputText, false, this::parse, this::isValid));
+    }
+
+    public CompletableFuture<T> createAsync(String inputText) {
+        return createAsync(inputText, null);
+    }
+
+    // 需要修复时在 AiConcurrency 的线程上发起修复请求，不阻塞响应回调线程
+    public CompletableFuture<T> createAsync(String inputText, AiCallOptions options) {
+        Call call;
+        try {
+            call = call(inputText, false, options);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return callAIAsync(call, inputText).thenCompose(entity -> isValid(entity)
+                ? CompletableFuture.completedFuture(entity)
+                : CompletableFuture.supplyAsync(() -> validate(inputText, entity), AiConcurrency.executor()));
+    }
+
+    // 在虚拟线程上并发创建，结果与输入顺序一致
+    public List<AiResult<T>> createAll(Collection<String> inputTexts, int maxConcurrency) {
+        return AiConcurrency.mapInOrder(inputTexts, maxConcurrency, this::create);
+    }
+
+    public T[] createArray(String inputText) {
+        return createArray(inputText, null);
+    }
+
+    public T[] createArray(String inputText, AiCallOptions options) {
+        Call call = call(inputText, true, options);
+        if (activeCache() == null) {
+            return validateAll(inputText, sendPayload(requestBody(call, inputText, true), call, this::parseArray));
+        }
+        return validateAll(inputText, callAI(call, inputText, true, this::parseArray, this::allValid));
+    }
+
+    public Stream<T> streamArray(String inputText) {
+        return streamArray(inputText, null);
+    }
+
+    // 以 SSE 流式请求，数组中每个对象一闭合就立即返回
+    public Stream<T> streamArray(String inputText, AiCallOptions options) {
+        Call call = call(inputText, true, options);
+        AiCallTrace trace = new AiCallTrace(entityType);
+        HttpResponse<Stream<String>> response;
+        try {
+            byte[] payload = withModel(
+                    AiJsonPayload.build(call.settings.arrayPayloadPrefix, inputText, arrayStreamPayloadSuffix), call.settings, call.model);
+            response = AiEndpointScheduler.await(send(payload, call, HttpResponse.BodyHandlers.ofLines(), trace));
+        } catch (IOException | RuntimeException e) {
+            trace.finish(e);
+            throw new RuntimeException("AI request failed", e);
+        } catch (InterruptedException e) {
+            trace.finish(e);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("AI request interrupted", e);
+        }
+
+        Stream<String> lines = response.body();
+        trace.setStatusCode(response.statusCode());
+        if (response.statusCode() != 200) {
+            lines.close();
+            RuntimeException error = new RuntimeException("API request failed with status code: " + response.statusCode());
+            trace.finish(error);
+            throw error;
+        }
+
+        // 服务端不支持流式输出时会直接返回完整的 JSON 响应
+        boolean eventStream = response.headers().firstValue("Content-Type")
+                .map(type -> type.startsWith("text/event-stream"))
+                .orElse(true);
+        if (!eventStream) {
+            try (lines; JsonParser parser = MAPPER.createParser(lines.collect(Collectors.joining("\n")))) {
+                String content = AiJsonReaders.readContent(parser, trace);
+                trace.finish(null);
+                return Arrays.stream(validateAll(inputText, parseArray(content)));
+            } catch (IOException e) {
+                trace.finish(e);
+                throw new RuntimeException("Failed to parse AI response", e);
+            } catch (RuntimeException e) {
+                trace.finish(e);
+                throw e;
+            }
+        }
+
+        AiJsonArraySplitter splitter = new AiJsonArraySplitter();
+        Stream<T> entities = Stream.concat(
+                lines.flatMap(line -> splitter.feed(extractDelta(line)).stream()),
+                Stream.of(splitter).flatMap(s -> s.finish().stream())
+        ).map(json -> validate(inputText, parse(json)));
+        return traced(entities, trace);
+    }
+
+    // 流读完或被关闭时结束追踪；读取、解析或校验出错时带上该错误
+    private static <E> Stream<E> traced(Stream<E> stream, AiCallTrace trace) {
+        Spliterator<E> source = stream.spliterator();
+        Spliterator<E> spliterator = new Spliterators.AbstractSpliterator<E>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super E> action) {
+                try {
+                    if (source.tryAdvance(action)) {
+                        return true;
+                    }
+                } catch (RuntimeException e) {
+                    trace.finish(e);
+                    throw e;
+                }
+                trace.finish(null);
+                return false;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            trace.finish(null);
+            stream.close();
+        });
+    }
+
+    public T[] createArray(File file) {
+        try {
+            String content = Files.readString(file.toPath());
+            return createArray(content);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read file", e);
+        }
+    }
+
+    // 按行边界把大文件切成不超过 maxChunkTokens 的块并发处理，再按顺序合并；有重叠行时去掉重复的对象
+    public T[] createArray(File file, int maxChunkTokens, int overlapLines) {
+        List<String> chunks;
+        try {
+            chunks = AiInputChunker.split(file.toPath(), maxChunkTokens, overlapLines);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read file", e);
+        }
+
+        List<AiResult<T[]>> results = AiConcurrency.mapInOrder(
+                chunks, AiConcurrency.DEFAULT_MAX_CONCURRENCY, this::createArray);
+        List<T[]> parts = new ArrayList<>(results.size());
+        for (AiResult<T[]> result : results) {
+            if (!result.isSuccess()) {
+                throw new RuntimeException("Failed to process file chunk", result.getError());
+            }
+            parts.add(result.getValue());
+        }
+        return AiInputChunker.merge(parts, overlapLines > 0, entity -> MAPPER.valueToTree(entity))
+                .toArray(arrayFactory.apply(0));
+    }
+
+    // 导出为 Batch API 的 JSONL：每个输入一行，custom_id 为输入序号，请求体与单对象请求相同；返回写入的行数
+    // Batch API 要求同一文件使用同一个模型，因此不按输入分级，始终使用配置的模型
+    public long exportBatch(Stream<String> inputTexts, Path file) {
+        return exportBatch(inputTexts, file, 0);
+    }
+
+    // 拆分成多个文件时用 firstIndex 让各文件的 custom_id 连续
+    public long exportBatch(Stream<String> inputTexts, Path file, long firstIndex) {
+        try {
+            return AiBatchJsonl.write(inputTexts, file, firstIndex, this::requestBody);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write batch file", e);
+        }
+    }
+
+    // 逐行导入 Batch API 的结果文件，返回的 Stream 需要关闭
+    public Stream<AiBatchResult<T>> importBatch(Path file) {
+        return importBatch(file, 0);
+    }
+
+    // 从 offset（上次导入最后一个结果的 getNextOffset()）继续导入；不合法的对象作为失败结果返回，不会发起修复请求
+    public Stream<AiBatchResult<T>> importBatch(Path file, long offset) {
+        try {
+            return AiBatchJsonl.read(MAPPER, file, offset, content -> checkValid(parse(content)));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read batch file", e);
+        }
+    }
+
+    // 解析模型输出的内容（单个对象）
+    public T parse(String jsonResponse) {
+        try (JsonParser parser = MAPPER.createParser(jsonResponse)) {
+            return readObject(parser);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse AI response", e);
+        }
+    }
+
+    private T parse(char[] chars, int offset, int length) {
+        try (JsonParser parser = MAPPER.createParser(chars, offset, length)) {
+            return readObject(parser);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse AI response", e);
+        }
+    }
+
+    private T readObject(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new RuntimeException("Expected JSON object response");
+        }
+        return reader.read(parser);
+    }
+
+    // 解析模型输出的内容（对象数组）
+    public T[] parseArray(String jsonResponse) {
+        try (JsonParser parser = MAPPER.createParser(jsonResponse)) {
+            return AiJsonReaders.readArray(parser, reader).toArray(arrayFactory.apply(0));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse AI response array", e);
+        }
+    }
+
+    private T[] parseArray(char[] chars, int offset, int length) {
+        try (JsonParser parser = MAPPER.createParser(chars, offset, length)) {
+            return AiJsonReaders.readArray(parser, reader).toArray(arrayFactory.apply(0));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse AI response array", e);
+        }
+    }
+
+    private T checkValid(T entity) {
+        if (!isValid(entity)) {
+            throw new RuntimeException("AI response failed validation for " + entityType + ": "
+                    + invalidFields(validator.validate(entity)));
+        }
+        return entity;
+    }
+
+    private boolean isValid(T entity) {
+        return validator == null || entity == null || validator.validate(entity) == 0;
+    }
+
+    private boolean allValid(T[] entities) {
+        for (T entity : entities) {
+            if (!isValid(entity)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 检查生成的对象；不合法时只针对不合法的字段重新请求并合并回原对象，多次修复仍失败则抛出异常
+    private T validate(String inputText, T entity) {
+        if (validator == null || entity == null) {
+            return entity;
+        }
+        long invalid = validator.validate(entity);
+        for (int attempt = 0; invalid != 0 && attempt < MAX_REPAIR_ATTEMPTS; attempt++) {
+            repair(inputText, entity, invalid);
+            invalid = validator.validate(entity);
+        }
+        if (invalid != 0) {
+            throw new RuntimeException("AI response failed validation for " + entityType + ": " + invalidFields(invalid));
+        }
+        return entity;
+    }
+
+    // 数组中不合法的对象并发修复，合法的对象不再发请求
+    private T[] validateAll(String inputText, T[] entities) {
+        if (validator == null) {
+            return entities;
+        }
+        List<T> invalid = new ArrayList<>();
+        for (T entity : entities) {
+            if (!isValid(entity)) {
+                invalid.add(entity);
+            }
+        }
+        if (invalid.isEmpty()) {
+            return entities;
+        }
+        for (AiResult<T> result : AiConcurrency.mapInOrder(invalid, AiConcurrency.DEFAULT_MAX_CONCURRENCY,
+                entity -> validate(inputText, entity))) {
+            if (!result.isSuccess()) {
+                Throwable error = result.getError();
+                throw error instanceof RuntimeException ? (RuntimeException) error : new RuntimeException(error);
+            }
+        }
+        return entities;
+    }
+
+    // 修复请求使用配置的模型和地址
+    private void repair(String inputText, T entity, long invalid) {
+        Call call = defaultCall();
+        byte[] payload = repairRequestBody(call.settings.model, inputText, entity, invalid);
+        // 修复请求不走缓存：同样的修复请求再次出现说明上次的回复仍不合法，应当重新生成
+        String content = sendPayload(payload, call, String::new);
+        try (JsonParser parser = MAPPER.createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException("Expected JSON object response");
+            }
+            merger.merge(parser, entity);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse AI repair response", e);
+        }
+    }
+
+    // 修复请求：附上原始输入和当前对象，只要求返回不合法的字段；有 schema 时只包含这些字段的 schema
+    private byte[] repairRequestBody(String repairModel, String inputText, T entity, long invalid) {
+        StringBuilder userMessage = new StringBuilder()
+                .append("Source text:\n").append(inputText)
+                .append("\n\nCurrent ").append(entityType).append(":\n").append(MAPPER.valueToTree(entity).toString())
+                .append("\n\nInvalid fields:");
+        ObjectNode properties = MAPPER.createObjectNode();
+        ArrayNode required = MAPPER.createArrayNode();
+        for (int i = 0; i < fieldNames.size() && i < Long.SIZE; i++) {
+            if ((invalid & (1L << i)) == 0) {
+                continue;
+            }
+            String rules = fieldRules.get(i);
+            userMessage.append("\n- ").append(fieldNames.get(i)).append(rules.isEmpty() ? "" : ": " + rules);
+            if (fieldSchemas != null) {
+                properties.set(fieldNames.get(i), fieldSchemas.get(i));
+                required.add(fieldNames.get(i));
+            }
+        }
+
+        ObjectNode body = MAPPER.createObjectNode();
+        body.put("model", repairModel);
+        ArrayNode messages = body.putArray("messages");
+        messages.addObject()
+                .put("role", "system")
+                .put("content", "You correct invalid fields of a " + entityType + " JSON object. "
+                        + "Fix only the listed fields so that they satisfy their rules and respond with a JSON object "
+                        + "containing only those fields.");
+        messages.addObject()
+                .put("role", "user")
+                .put("content", userMessage.toString());
+        ObjectNode responseFormat = body.putObject("response_format");
+        if (fieldSchemas != null) {
+            ObjectNode schema = MAPPER.createObjectNode();
+            schema.put("type", "object");
+            schema.set("properties", properties);
+            schema.set("required", required);
+            schema.put("additionalProperties", false);
+            if (schemaDefinitions != null) {
+                schema.set("$defs", schemaDefinitions);
+            }
+            responseFormat.put("type", "json_schema");
+            responseFormat.putObject("json_schema")
+                    .put("name", entityType + "_repair")
+                    .put("strict", repairStrict)
+                    .set("schema", schema);
+        } else {
+            responseFormat.put("type", "json_object");
+        }
+        body.put("temperature", temperature);
+        try {
+            return MAPPER.writeValueAsBytes(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to build repair request", e);
+        }
+    }
+
+    private String invalidFields(long invalid) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < fieldNames.size() && i < Long.SIZE; i++) {
+            if ((invalid & (1L << i)) != 0) {
+                names.add(fieldNames.get(i));
+            }
+        }
+        return String.join(", ", names);
+    }
+
+    // 单对象请求的完整请求体，使用配置的模型
+    public byte[] requestBody(String inputText) {
+        return AiJsonPayload.build(settings().payloadPrefix, inputText, payloadSuffix);
+    }
+
+    // 数组请求的完整请求体，使用配置的模型
+    public byte[] arrayRequestBody(String inputText) {
+        return AiJsonPayload.build(settings().arrayPayloadPrefix, inputText, arrayPayloadSuffix);
+    }
+
+    private byte[] requestBody(Call call, String inputText, boolean array) {
+        byte[] payload = array
+                ? AiJsonPayload.build(call.settings.arrayPayloadPrefix, inputText, arrayPayloadSuffix)
+                : AiJsonPayload.build(call.settings.payloadPrefix, inputText, payloadSuffix);
+        return withModel(payload, call.settings, call.model);
+    }
+
+    // 有路由时由路由选出地址后再构造请求，故障转移到其他地址时重新构造
+    // 完整响应以 InputStream 交给解析器边读边解析，启用对冲的地址按 p95 延迟发送对冲请求
+    private CompletableFuture<HttpResponse<InputStream>> send(byte[] payload, Call call, AiCallTrace trace) {
+        return send(payload, call, HttpResponse.BodyHandlers.ofInputStream(), responseCompression, true, trace);
+    }
+
+    // 流式请求不声明压缩，SSE 事件需要逐行尽快送达
+    private <R> CompletableFuture<HttpResponse<R>> send(byte[] payload, Call call, HttpResponse.BodyHandler<R> handler, AiCallTrace trace) {
+        return send(payload, call, handler, false, false, trace);
+    }
+
+    private <R> CompletableFuture<HttpResponse<R>> send(
+            byte[] payload, Call call, HttpResponse.BodyHandler<R> handler, boolean compressed, boolean hedge, AiCallTrace trace) {
+        AiEndpointRouter activeRouter = call.apiUrl == null && call.apiKey == null ? activeRouter() : null;
+        trace.setModel(call.effectiveModel());
+        if (activeRouter == null) {
+            String url = call.apiUrl != null ? call.apiUrl : call.settings.apiUrl;
+            // 配置的密钥只发往配置的地址；覆盖了地址却没有给出密钥时不带 Authorization 请求头
+            String key = call.apiKey != null ? call.apiKey : url.equals(call.settings.apiUrl) ? call.settings.apiKey : null;
+            return AiEndpointScheduler.forEndpoint(url)
+                    .send(activeTransport(), buildRequest(url, key, payload, compressed), handler, trace, hedge);
+        }
+        return activeRouter.send(activeTransport(), endpoint -> buildRequest(endpoint, call, payload, compressed, trace),
+                handler, trace, hedge);
+    }
+
+    // 地址配置的模型只替换默认模型；分级或单次调用指定的模型原样发往各个地址
+    private HttpRequest buildRequest(AiEndpoint endpoint, Call call, byte[] payload, boolean compressed, AiCallTrace trace) {
+        if (call.model == null && endpoint.getModel() != null) {
+            payload = withModel(payload, call.settings, endpoint.getModel());
+            trace.setModel(endpoint.getModel());
+        }
+        return buildRequest(endpoint.getUrl(), endpoint.getApiKey(), payload, compressed);
+    }
+
+    // 流式请求不声明压缩，SSE 事件需要逐行尽快送达；key 为 null 时不发送 Authorization
+    private HttpRequest buildRequest(String url, String key, byte[] payload, boolean compressed) {
+        if (AiMetrics.isPayloadLogging()) {
+            AiMetrics.logPayload(entityType, "request", new String(payload, StandardCharsets.UTF_8));
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json");
+        if (key != null) {
+            request.header("Authorization", "Bearer " + key);
+        }
+        if (compressed) {
+            request.header("Accept-Encoding", AiResponseBodies.ACCEPT_ENCODING);
+        }
+        return request.POST(HttpRequest.BodyPublishers.ofByteArray(payload)).build();
+    }
+
+    // 请求体开头的 {"model":"..." 部分
+    private static byte[] modelField(String modelName) {
+        return AiJsonPayload.build(AiJsonPayload.utf8("{\"model\":\""), modelName != null ? modelName : "", AiJsonPayload.utf8("\""));
+    }
+
+    // 编译期生成的请求体以模型开头，使用其他模型时只替换这一段，其余字节直接复制
+    private static byte[] withModel(byte[] payload, Settings current, String targetModel) {
+        if (targetModel == null || targetModel.equals(current.model)) {
+            return payload;
+        }
+        return replaceModel(payload, current.modelField, targetModel);
+    }
+
+    private static byte[] replaceModel(byte[] payload, byte[] currentField, String targetModel) {
+        if (!startsWith(payload, currentField)) {
+            return payload;
+        }
+        byte[] field = modelField(targetModel);
+        byte[] replaced = new byte[field.length + payload.length - currentField.length];
+        System.arraycopy(field, 0, replaced, 0, field.length);
+        System.arraycopy(payload, currentField.length, replaced, field.length, payload.length - currentField.length);
+        return replaced;
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        return data.length >= prefix.length && Arrays.equals(data, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    // 从响应中提取模型输出的内容：响应体按 Content-Encoding 解压后直接交给流式解析器，不先缓冲成 String，
+    // content 以解析器内部的字符缓冲区交给 contentReader；响应体边下载边解析，下载时间计入解析耗时
+    private <R> R extractContent(HttpResponse<InputStream> response, AiCallTrace trace,
+                                 AiJsonReaders.ContentReader<R> contentReader) throws IOException {
+        AiResponseBodies.CountingInputStream body = new AiResponseBodies.CountingInputStream(response.body());
+        trace.setStatusCode(response.statusCode());
+        try {
+            InputStream decoded = AiResponseBodies.decode(body, response.headers());
+            if (AiMetrics.isPayloadLogging()) {
+                byte[] responseBody = decoded.readAllBytes();
+                AiMetrics.logPayload(entityType, "response", new String(responseBody, StandardCharsets.UTF_8));
+                decoded = new ByteArrayInputStream(responseBody);
+            }
+
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("API request failed with status code: " + response.statusCode());
+            }
+
+            long parseStart = System.nanoTime();
+            try (JsonParser parser = MAPPER.createParser(decoded)) {
+                // 关闭解析器时不关闭响应体，剩余部分在下面读完
+                parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+                return AiJsonReaders.readContent(parser, trace, contentReader);
+            } finally {
+                trace.addParseNanos(System.nanoTime() - parseStart);
+            }
+        } finally {
+            AiResponseBodies.drainAndClose(body);
+            trace.setResponseBytes(response.headers().firstValueAsLong("Content-Length").orElse(body.getCount()));
+        }
+    }
+
+    // 从一行 SSE 事件中提取增量内容
+    private static String extractDelta(String line) {
+        if (!line.startsWith("data:")) {
+            return "";
+        }
+        String data = line.substring(5).trim();
+        if (data.isEmpty() || data.equals("[DONE]")) {
+            return "";
+        }
+
+        try {
+            JsonNode event = MAPPER.readTree(data);
+            if (event.has("error")) {
+                throw new RuntimeException("API Error: " + event.get("error").path("message").asText());
+            }
+            JsonNode choices = event.path("choices");
+            if (choices.size() == 0) {
+                return "";
+            }
+            return choices.get(0).path("delta").path("content").asText("");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to parse stream event", e);
+        }
+    }
+
+    // 只缓存能解析且通过校验的响应，需要修复的响应每次重新请求
+    private <R> R callAI(Call call, String inputText, boolean array, Function<String, R> parser, Predicate<R> cacheable) {
+        AiResponseCache responseCache = activeCache();
+        if (responseCache == null) {
+            return parser.apply(fetch(call, inputText, array));
+        }
+        return responseCache.get(cacheKey(call, inputText, array), () -> fetch(call, inputText, array), parser, cacheable);
+    }
+
+    // 只有使用配置的模型和地址的单对象请求参与微批处理
+    private String fetch(Call call, String inputText, boolean array) {
+        AiMicroBatcher<String> activeBatcher = batcher;
+        if (activeBatcher == null || array || !call.isDefault()) {
+            return sendPayload(requestBody(call, inputText, array), call, String::new);
+        }
+        try {
+            return AiEndpointScheduler.await(activeBatcher.submit(inputText));
+        } catch (Exception e) {
+            throw new RuntimeException("AI request failed", e);
+        }
+    }
+
+    private <R> R sendPayload(byte[] payload, Call call, AiJsonReaders.ContentReader<R> contentReader) {
+        AiCallTrace trace = new AiCallTrace(entityType);
+        try {
+            HttpResponse<InputStream> response = AiEndpointScheduler.await(send(payload, call, trace));
+            R content = extractContent(response, trace, contentReader);
+            trace.finish(null);
+            return content;
+        } catch (Exception e) {
+            trace.finish(e);
+            throw new RuntimeException("AI request failed", e);
+        }
+    }
+
+    // 异步调用，不占用调用方线程等待网络往返
+    private CompletableFuture<T> callAIAsync(Call call, String inputText) {
+        AiResponseCache responseCache = activeCache();
+        if (responseCache == null) {
+            return fetchAsync(call, inputText).thenApply(this::parse);
+        }
+        return responseCache.getAsync(cacheKey(call, inputText, false), () -> fetchAsync(call, inputText),
+                this::parse, this::isValid);
+    }
+
+    private CompletableFuture<String> fetchAsync(Call call, String inputText) {
+        AiMicroBatcher<String> activeBatcher = batcher;
+        return activeBatcher != null && call.isDefault() ? activeBatcher.submit(inputText) : sendRequestAsync(call, inputText);
+    }
+
+    // 微批处理中单独重试的请求使用配置的模型和地址
+    private CompletableFuture<String> sendRequestAsync(String inputText) {
+        return sendRequestAsync(defaultCall(), inputText);
+    }
+
+    // 读取响应体会阻塞，放到 AiConcurrency 的线程上，不占用 HttpClient 的回调线程
+    private CompletableFuture<String> sendRequestAsync(Call call, String inputText) {
+        AiCallTrace trace = new AiCallTrace(entityType);
+        return send(requestBody(call, inputText, false), call, trace)
+                .thenApplyAsync(response -> {
+                    try {
+                        return extractContent(response, trace, String::new);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to read AI response", e);
+                    }
+                }, AiConcurrency.executor())
+                .whenComplete((content, error) -> trace.finish(error));
+    }
+
+    // 一次请求多条输入，结果按输入顺序返回；缺失或无法解析的项为 null，由 AiMicroBatcher 单独重试
+    private CompletableFuture<List<String>> sendBatchAsync(List<String> inputTexts) {
+        Call call = defaultCall();
+        byte[] payload = AiJsonPayload.build(call.settings.batchPayloadPrefix, AiMicroBatcher.itemsJson(inputTexts), batchPayloadSuffix);
+        AiCallTrace trace = new AiCallTrace(entityType);
+        return send(payload, call, trace)
+                .thenApplyAsync(response -> {
+                    try {
+                        return AiMicroBatcher.parseResults(MAPPER, extractContent(response, trace, String::new),
+                                inputTexts.size(), reader);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to read AI response", e);
+                    }
+                }, AiConcurrency.executor())
+                .whenComplete((results, error) -> trace.finish(error));
+    }
+
+    // 解析占位符后的配置，AiConfig 的版本变化后重新生成；请求体模板中的模型在这里替换一次，不必每个请求都替换
+    private static final class Settings {
+        private final long version;
+        private final String model;
+        private final String apiUrl;
+        private final String apiKey;
+        private final byte[] modelField;
+        private final byte[] payloadPrefix;
+        private final byte[] arrayPayloadPrefix;
+        private final byte[] batchPayloadPrefix;
+
+        private Settings(long version, String model, String apiUrl, String apiKey, AiEntityClient<?> client) {
+            this.version = version;
+            this.model = model;
+            this.apiUrl = apiUrl;
+            this.apiKey = apiKey;
+            this.modelField = modelField(model);
+            this.payloadPrefix = replaceModel(client.payloadPrefix, client.templateModelField, model);
+            this.arrayPayloadPrefix = replaceModel(client.arrayPayloadPrefix, client.templateModelField, model);
+            this.batchPayloadPrefix = replaceModel(client.batchPayloadPrefix, client.templateModelField, model);
+        }
+    }
+
+    // 一次调用实际使用的模型和地址：model 为 null 时使用配置的模型，apiUrl 和 apiKey 都为 null 时使用路由或配置的地址
+    private static final class Call {
+        private final Settings settings;
+        private final String model;
+        private final String apiUrl;
+        private final String apiKey;
+
+        private Call(Settings settings, String model, String apiUrl, String apiKey) {
+            this.settings = settings;
+            this.model = model == null || model.equals(settings.model) ? null : model;
+            this.apiUrl = apiUrl;
+            this.apiKey = apiKey;
+        }
+
+        private boolean isDefault() {
+            return model == null && apiUrl == null && apiKey == null;
+        }
+
+        private String effectiveModel() {
+            return model != null ? model : settings.model;
+        }
+
+        // 经路由发送时为配置的地址
+        private String effectiveUrl() {
+            return apiUrl != null ? apiUrl : settings.apiUrl;
+        }
+    }
+
+    // 由生成的工厂在类初始化时调用；提示和请求体模板在编译期生成
+    public static final class Builder<T> {
+        private final String entityType;
+        private final AiEntityReader<T> reader;
+        private final IntFunction<T[]> arrayFactory;
+        private String model;
+        private String apiUrl;
+        private String apiKey;
+        private double temperature;
+        private String systemPrompt = "";
+        private String payloadPrefix = "";
+        private String payloadSuffix = "";
+        private String arrayPayloadPrefix = "";
+        private String arrayPayloadSuffix = "";
+        private String arrayStreamPayloadSuffix = "";
+        private String batchPayloadPrefix = "";
+        private String batchPayloadSuffix = "";
+        private AiEntityValidator<T> validator;
+        private AiEntityMerger<T> merger;
+        private List<String> fieldNames = List.of();
+        private List<String> fieldRules = List.of();
+        private List<JsonNode> fieldSchemas;
+        private JsonNode schemaDefinitions;
+        private boolean repairStrict;
+
+        private Builder(String entityType, AiEntityReader<T> reader, IntFunction<T[]> arrayFactory) {
+            this.entityType = entityType;
+            this.reader = reader;
+            this.arrayFactory = arrayFactory;
+        }
+
+        public Builder<T> model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        public Builder<T> apiUrl(String apiUrl) {
+            this.apiUrl = apiUrl;
+            return this;
+        }
+
+        public Builder<T> apiKey(String apiKey) {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        public Builder<T> temperature(double temperature) {
+            this.temperature = temperature;
+            return this;
+        }
+
+        public Builder<T> systemPrompt(String systemPrompt) {
+            this.systemPrompt = systemPrompt;
+            return this;
+        }
+
+        // 单对象请求体 = prefix + 转义后的用户输入 + suffix
+        public Builder<T> payload(String prefix, String suffix) {
+            this.payloadPrefix = prefix;
+            this.payloadSuffix = suffix;
+            return this;
+        }
+
+        // 数组请求体，流式请求使用 streamSuffix
+        public Builder<T> arrayPayload(String prefix, String suffix, String streamSuffix) {
+            this.arrayPayloadPrefix = prefix;
+            this.arrayPayloadSuffix = suffix;
+            this.arrayStreamPayloadSuffix = streamSuffix;
+            return this;
+        }
+
+        // 微批请求体，用户输入为 AiMicroBatcher.itemsJson 生成的 JSON
+        public Builder<T> batchPayload(String prefix, String suffix) {
+            this.batchPayloadPrefix = prefix;
+            this.batchPayloadSuffix = suffix;
+            return this;
+        }
+
+        // 生成的校验器和局部读取器；fieldNames/fieldRules 按字段顺序排列，下标与校验器的位一致
+        public Builder<T> validation(AiEntityValidator<T> validator, AiEntityMerger<T> merger,
+                                     List<String> fieldNames, List<String> fieldRules) {
+            this.validator = validator;
+            this.merger = merger;
+            this.fieldNames = fieldNames;
+            this.fieldRules = fieldRules;
+            return this;
+        }
+
+        // 每个字段的 JSON Schema 和共用的 $defs（可为 null），修复请求据此构造 json_schema
+        public Builder<T> repairSchema(List<String> fieldSchemas, String definitions, boolean strict) {
+            try {
+                List<JsonNode> schemas = new ArrayList<>(fieldSchemas.size());
+                for (String schema : fieldSchemas) {
+                    schemas.add(MAPPER.readTree(schema));
+                }
+                this.fieldSchemas = schemas;
+                this.schemaDefinitions = definitions != null ? MAPPER.readTree(definitions) : null;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Invalid repair schema", e);
+            }
+            this.repairStrict = strict;
+            return this;
+        }
+
+        public AiEntityClient<T> build() {
+            return new AiEntityClient<>(this);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+// 生成的局部读取器：把 JSON 对象中出现的字段写入已有的实体，parser 位于 START_OBJECT 上
+@FunctionalInterface
+public interface AiEntityMerger<T> {
+    void merge(JsonParser parser, T entity) throws IOException;
+}
@@ -0,0 +1,11 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+// 由注解处理器为每个实体生成的流式读取器：parser 位于对象的 START_OBJECT 或第一个 FIELD_NAME 上（空对象时位于 END_OBJECT），读取到对应的 END_OBJECT
+@FunctionalInterface
+public interface AiEntityReader<T> {
+    T read(JsonParser parser) throws IOException;
+}
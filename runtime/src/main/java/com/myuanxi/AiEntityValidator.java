@@ -0,0 +1,7 @@
+package com.myuanxi;
+
+// 生成的校验器：返回不合法字段的位掩码，第 i 位对应实体的第 i 个字段，0 表示全部合法
+@FunctionalInterface
+public interface AiEntityValidator<T> {
+    long validate(T entity);
+}
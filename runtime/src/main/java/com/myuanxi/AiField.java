@@ -0,0 +1,28 @@
+package com.myuanxi;
+
+import java.lang.annotation.*;
+
+// 与 AiEntity 一样保留到 class 文件，重新处理未修改的实体时仍能读到字段上的约束
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.CLASS)
+public @interface AiField {
+    String description() default "";
+
+    // 以下约束由生成的校验器检查，不满足时只针对不合法的字段重新请求
+
+    // 数值字段的取值范围（含边界）
+    double min() default Double.NEGATIVE_INFINITY;
+
+    double max() default Double.POSITIVE_INFINITY;
+
+    // 字符串必须完整匹配的正则表达式
+    String pattern() default "";
+
+    // 字符串的长度，或数组/集合的元素个数
+    int minLength() default 0;
+
+    int maxLength() default Integer.MAX_VALUE;
+
+    // 不能为 null
+    boolean required() default false;
+}
@@ -0,0 +1,151 @@
+package com.myuanxi;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 基于 java.net.http.HttpClient 的传输层，所有生成的工厂默认共用同一个实例（同一个连接池）
+// 连接池大小和空闲连接保活时间由 JDK 的 jdk.httpclient.connectionPoolSize / jdk.httpclient.keepalive.timeout 系统属性控制
+public final class AiHttpTransport implements AiTransport {
+
+    private static volatile AiHttpTransport shared;
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final int maxConcurrentRequests;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    private AiHttpTransport(Builder builder) {
+        HttpClient.Builder clientBuilder = HttpClient.newBuilder()
+                .version(builder.version)
+                .connectTimeout(builder.connectTimeout);
+        if (builder.executor != null) {
+            clientBuilder.executor(builder.executor);
+        }
+        this.client = clientBuilder.build();
+        this.requestTimeout = builder.requestTimeout;
+        this.maxConcurrentRequests = builder.maxConcurrentRequests;
+    }
+
+    public static AiHttpTransport getShared() {
+        AiHttpTransport transport = shared;
+        if (transport == null) {
+            synchronized (AiHttpTransport.class) {
+                transport = shared;
+                if (transport == null) {
+                    transport = builder().build();
+                    shared = transport;
+                }
+            }
+        }
+        return transport;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public HttpClient getHttpClient() {
+        return client;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        HttpRequest timedRequest = requestTimeout != null && request.timeout().isEmpty()
+                ? HttpRequest.newBuilder(request, (name, value) -> true).timeout(requestTimeout).build()
+                : request;
+        if (maxConcurrentRequests <= 0) {
+            return client.sendAsync(timedRequest, handler);
+        }
+
+        // 超过并发上限的请求排队，不占用调用方线程
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        waiting.add(() -> {
+            CompletableFuture<HttpResponse<T>> sent;
+            try {
+                sent = client.sendAsync(timedRequest, handler);
+            } catch (RuntimeException e) {
+                sent = CompletableFuture.failedFuture(e);
+            }
+            sent.whenComplete((response, error) -> {
+                inFlight.decrementAndGet();
+                drain();
+                if (error == null) {
+                    result.complete(response);
+                } else {
+                    result.completeExceptionally(error);
+                }
+            });
+        });
+        drain();
+        return result;
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= maxConcurrentRequests) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable next = waiting.poll();
+            if (next == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            next.run();
+        }
+    }
+
+    public static final class Builder {
+        private HttpClient.Version version = HttpClient.Version.HTTP_2;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration requestTimeout;
+        private Executor executor;
+        private int maxConcurrentRequests;
+
+        private Builder() {
+        }
+
+        // 默认 HTTP/2，服务端不支持时 HttpClient 自动降级为 HTTP/1.1
+        public Builder version(HttpClient.Version version) {
+            this.version = version;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        // 未设置超时的请求使用该值，null 表示不限制
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        // 同时进行中的请求数上限，0 表示不限制
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = Math.max(0, maxConcurrentRequests);
+            return this;
+        }
+
+        public AiHttpTransport build() {
+            return new AiHttpTransport(this);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.myuanxi;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// 内存中的请求统计，按实体类型汇总：延迟直方图（排队、网络、解析、总耗时）、请求/响应大小、token 数、重试和错误类别
+// scrape() 输出 Prometheus 文本格式，便于直接暴露给监控系统抓取
+public final class AiInMemoryMetrics implements AiCallListener {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.95, 0.99};
+
+    private final Map<String, EntityMetrics> entities = new ConcurrentHashMap<>();
+
+    @Override
+    public void onCall(AiCallTrace trace) {
+        entities.computeIfAbsent(trace.getEntityType(), type -> new EntityMetrics()).record(trace);
+    }
+
+    public EntityMetrics get(String entityType) {
+        return entities.get(entityType);
+    }
+
+    public Map<String, EntityMetrics> getAll() {
+        return new TreeMap<>(entities);
+    }
+
+    public void reset() {
+        entities.clear();
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, EntityMetrics> entry : getAll().entrySet()) {
+            String entity = "entity=\"" + entry.getKey().replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+            EntityMetrics metrics = entry.getValue();
+            line(out, "ai_entity_calls_total", entity, metrics.calls.sum());
+            for (Map.Entry<AiCallTrace.ErrorCategory, LongAdder> error : metrics.errors.entrySet()) {
+                line(out, "ai_entity_errors_total", entity + ",category=\"" + error.getKey().name().toLowerCase() + "\"", error.getValue().sum());
+            }
+            line(out, "ai_entity_retries_total", entity, metrics.retries.sum());
+            line(out, "ai_entity_hedged_total", entity, metrics.hedged.sum());
+            line(out, "ai_entity_tokens_total", entity + ",kind=\"prompt\"", metrics.promptTokens.sum());
+            line(out, "ai_entity_tokens_total", entity + ",kind=\"completion\"", metrics.completionTokens.sum());
+            summary(out, "ai_entity_latency_seconds", entity + ",phase=\"queue\"", metrics.queue, 1e-9);
+            summary(out, "ai_entity_latency_seconds", entity + ",phase=\"network\"", metrics.network, 1e-9);
+            summary(out, "ai_entity_latency_seconds", entity + ",phase=\"parse\"", metrics.parse, 1e-9);
+            summary(out, "ai_entity_latency_seconds", entity + ",phase=\"total\"", metrics.total, 1e-9);
+            summary(out, "ai_entity_payload_bytes", entity + ",direction=\"request\"", metrics.requestBytes, 1);
+            summary(out, "ai_entity_payload_bytes", entity + ",direction=\"response\"", metrics.responseBytes, 1);
+        }
+        return out.toString();
+    }
+
+    private static void line(StringBuilder out, String name, String labels, Object value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, Histogram histogram, double scale) {
+        for (double quantile : QUANTILES) {
+            line(out, name, labels + ",quantile=\"" + quantile + "\"", histogram.percentile(quantile * 100) * scale);
+        }
+        line(out, name + "_sum", labels, histogram.getSum() * scale);
+        line(out, name + "_count", labels, histogram.getCount());
+    }
+
+    public static final class EntityMetrics {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder hedged = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private final Map<AiCallTrace.ErrorCategory, LongAdder> errors = new EnumMap<>(AiCallTrace.ErrorCategory.class);
+        private final Histogram queue = new Histogram();
+        private final Histogram network = new Histogram();
+        private final Histogram parse = new Histogram();
+        private final Histogram total = new Histogram();
+        private final Histogram requestBytes = new Histogram();
+        private final Histogram responseBytes = new Histogram();
+
+        EntityMetrics() {
+            for (AiCallTrace.ErrorCategory category : AiCallTrace.ErrorCategory.values()) {
+                errors.put(category, new LongAdder());
+            }
+        }
+
+        void record(AiCallTrace trace) {
+            calls.increment();
+            retries.add(trace.getRetries());
+            if (trace.isHedged()) {
+                hedged.increment();
+            }
+            promptTokens.add(trace.getPromptTokens());
+            completionTokens.add(trace.getCompletionTokens());
+            if (trace.getError() != null) {
+                errors.get(trace.getError()).increment();
+            }
+            queue.record(trace.getQueueNanos());
+            network.record(trace.getNetworkNanos());
+            parse.record(trace.getParseNanos());
+            total.record(trace.getTotalNanos());
+            requestBytes.record(trace.getRequestBytes());
+            responseBytes.record(trace.getResponseBytes());
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getErrors(AiCallTrace.ErrorCategory category) {
+            return errors.get(category).sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        public long getHedged() {
+            return hedged.sum();
+        }
+
+        public long getPromptTokens() {
+            return promptTokens.sum();
+        }
+
+        public long getCompletionTokens() {
+            return completionTokens.sum();
+        }
+
+        public Histogram getQueueNanos() {
+            return queue;
+        }
+
+        public Histogram getNetworkNanos() {
+            return network;
+        }
+
+        public Histogram getParseNanos() {
+            return parse;
+        }
+
+        public Histogram getTotalNanos() {
+            return total;
+        }
+
+        public Histogram getRequestBytes() {
+            return requestBytes;
+        }
+
+        public Histogram getResponseBytes() {
+            return responseBytes;
+        }
+    }
+
+    // 与 HdrHistogram 相同的对数-线性分桶：每个 2 的幂区间再等分 32 份，相对误差约 3%，记录无锁且不分配内存
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        public void record(long value) {
+            value = Math.max(0, value);
+            counts.incrementAndGet(index(value));
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        // 返回所在分桶的上界（不超过最大值），percentile 取 0-100
+        public long percentile(double percentile) {
+            long n = count.sum();
+            if (n == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(n * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= target) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        private static int index(long value) {
+            if (value < 2 * SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        private static long upperBound(int index) {
+            if (index < 2 * SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            long top = index % SUB_BUCKETS + SUB_BUCKETS;
+            return ((top + 1) << shift) - 1;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.myuanxi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// 大文件输入切分：按行边界把文件切成不超过 token 预算的块，块之间可以重叠若干行
+public final class AiInputChunker {
+
+    // 超过该大小的文件使用内存映射读取
+    public static final long MAPPED_THRESHOLD_BYTES = 1L << 20;
+    public static final int DEFAULT_MAX_CHUNK_TOKENS = 2000;
+    // 大文件按窗口逐段映射，文件大小不受单个 MappedByteBuffer 2 GB 的限制，同一时刻只需要映射一个窗口
+    static final long MAP_WINDOW_BYTES = 1L << 28;
+
+    private AiInputChunker() {
+    }
+
+    public static List<String> split(Path file, int maxChunkTokens, int overlapLines) throws IOException {
+        if (maxChunkTokens < 1) {
+            throw new IllegalArgumentException("maxChunkTokens must be positive: " + maxChunkTokens);
+        }
+        if (overlapLines < 0) {
+            throw new IllegalArgumentException("overlapLines must not be negative: " + overlapLines);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAPPED_THRESHOLD_BYTES) {
+                return splitMapped(channel, MAP_WINDOW_BYTES, maxChunkTokens, overlapLines);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 读满为止
+            }
+            buffer.flip();
+            return split(buffer, maxChunkTokens, overlapLines);
+        }
+    }
+
+    // 与切分时相同的估算方式：ASCII 字符约 4 个一个 token，其他字符约每个一个 token
+    public static int estimateTokens(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int ascii = 0;
+        int wide = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                ascii++;
+            } else if (!Character.isLowSurrogate(c)) {
+                wide++;
+            }
+        }
+        return (ascii + 3) / 4 + wide;
+    }
+
+    static List<String> split(ByteBuffer buffer, int maxChunkTokens, int overlapLines) throws IOException {
+        Chunker chunker = new Chunker(null, maxChunkTokens, overlapLines);
+        chunker.scan(buffer, 0);
+        return chunker.finish(buffer.limit());
+    }
+
+    // 逐个窗口映射文件；跨窗口的行和块由 Chunker 按文件偏移拼接
+    static List<String> splitMapped(FileChannel channel, long windowBytes, int maxChunkTokens, int overlapLines) throws IOException {
+        Chunker chunker = new Chunker(channel, maxChunkTokens, overlapLines);
+        long size = channel.size();
+        for (long base = 0; base < size; base += windowBytes) {
+            chunker.scan(channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(windowBytes, size - base)), base);
+        }
+        return chunker.finish(size);
+    }
+
+    // UTF-8 中换行符不会出现在多字节字符内部，因此可以直接在字节上按行切分
+    // 行和块的位置都是文件中的字节偏移，窗口边界可以落在一行的中间
+    private static final class Chunker {
+        private final FileChannel channel;
+        private final int maxChunkTokens;
+        private final int overlapLines;
+        private final List<String> chunks = new ArrayList<>();
+        // 当前块中的行：[起始偏移, 结束偏移, token 数]
+        private final Deque<long[]> lines = new ArrayDeque<>();
+        private int chunkTokens;
+
+        // 正在读取的行
+        private long lineStart;
+        private int asciiBytes;
+        private int wideChars;
+
+        // 当前映射的窗口
+        private ByteBuffer window;
+        private long windowBase;
+
+        Chunker(FileChannel channel, int maxChunkTokens, int overlapLines) {
+            this.channel = channel;
+            this.maxChunkTokens = maxChunkTokens;
+            this.overlapLines = overlapLines;
+        }
+
+        void scan(ByteBuffer window, long base) throws IOException {
+            this.window = window;
+            this.windowBase = base;
+            int limit = window.limit();
+            for (int i = 0; i < limit; i++) {
+                byte b = window.get(i);
+                if (b == '\n') {
+                    endLine(base + i + 1);
+                } else if (b >= 0) {
+                    asciiBytes++;
+                } else if ((b & 0xC0) == 0xC0) {
+                    // 多字节字符的首字节，中文等字符大约每个字占一个 token
+                    wideChars++;
+                }
+            }
+        }
+
+        List<String> finish(long size) throws IOException {
+            if (lineStart < size) {
+                endLine(size);
+            }
+            if (!lines.isEmpty()) {
+                addChunk(lines.peekFirst()[0], lines.peekLast()[1]);
+            }
+            return chunks;
+        }
+
+        private void endLine(long lineEnd) throws IOException {
+            int lineTokens = (asciiBytes + 3) / 4 + wideChars;
+            asciiBytes = 0;
+            wideChars = 0;
+
+            if (!lines.isEmpty() && chunkTokens + lineTokens > maxChunkTokens) {
+                addChunk(lines.peekFirst()[0], lines.peekLast()[1]);
+                // 保留最后 overlapLines 行作为下一块的开头
+                while (lines.size() > overlapLines) {
+                    chunkTokens -= (int) lines.removeFirst()[2];
+                }
+                // 重叠部分本身已超出预算时放弃重叠，避免同一行被无限重复
+                while (!lines.isEmpty() && chunkTokens + lineTokens > maxChunkTokens) {
+                    chunkTokens -= (int) lines.removeFirst()[2];
+                }
+            }
+            lines.addLast(new long[]{lineStart, lineEnd, lineTokens});
+            chunkTokens += lineTokens;
+            lineStart = lineEnd;
+        }
+
+        // 块完全在当前窗口内时直接解码映射区域，否则（从上一个窗口开始）按偏移从文件读取
+        private void addChunk(long start, long end) throws IOException {
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("Line too long to fit in one chunk at byte offset " + start);
+            }
+            int length = (int) (end - start);
+            ByteBuffer bytes;
+            if (start >= windowBase && end <= windowBase + window.limit()) {
+                bytes = window.slice((int) (start - windowBase), length);
+            } else {
+                bytes = ByteBuffer.allocate(length);
+                while (bytes.hasRemaining()) {
+                    if (channel.read(bytes, start + bytes.position()) < 0) {
+                        throw new IOException("File truncated while reading chunk at byte offset " + start);
+                    }
+                }
+                bytes.flip();
+            }
+            String chunk = StandardCharsets.UTF_8.decode(bytes).toString();
+            if (!chunk.isBlank()) {
+                chunks.add(chunk);
+            }
+        }
+    }
+
+    // 按顺序合并每块的结果；dedupe 为 true 时，去掉与上一块结果重复的对象（来自重叠的行）
+    public static <T> List<T> merge(List<T[]> parts, boolean dedupe, Function<? super T, ?> identity) {
+        List<T> merged = new ArrayList<>();
+        Map<Object, Integer> previous = Collections.emptyMap();
+        for (T[] part : parts) {
+            Map<Object, Integer> current = dedupe ? new HashMap<>() : Collections.emptyMap();
+            for (T item : part) {
+                if (dedupe) {
+                    Object id = identity.apply(item);
+                    current.merge(id, 1, Integer::sum);
+                    Integer seen = previous.get(id);
+                    if (seen != null) {
+                        if (seen == 1) {
+                            previous.remove(id);
+                        } else {
+                            previous.put(id, seen - 1);
+                        }
+                        continue;
+                    }
+                }
+                merged.add(item);
+            }
+            previous = current;
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,147 @@
+package com.myuanxi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// 增量切分模型流式输出的 JSON：每当结果数组中的一个对象闭合，就立即返回它的 JSON 文本
+// 结果数组是顶层数组 [...]，或顶层对象中提示和 schema 要求的包装字段 {"items": [...]}；其他字段中的数组不会被当作结果
+// 数组中只返回对象元素，标量元素被跳过；整个输出是单个对象时在 finish() 时把它作为唯一的元素返回
+public final class AiJsonArraySplitter {
+
+    public static final String DEFAULT_WRAPPER_KEY = "items";
+
+    private final String wrapperKey;
+
+    private final StringBuilder whole = new StringBuilder();
+    private final StringBuilder element = new StringBuilder();
+    private final StringBuilder key = new StringBuilder();
+
+    // 第一个非空白字符：'[' 顶层数组，'{' 顶层对象，0 尚未读到
+    private char root;
+    private int depth;
+    // 结果数组内部的深度，-1 表示当前不在结果数组中
+    private int arrayDepth = -1;
+    private boolean arrayFound;
+    private boolean expectKey;
+    private boolean readingKey;
+    private String currentKey;
+    private boolean capturing;
+    private boolean inString;
+    private boolean escaped;
+
+    public AiJsonArraySplitter() {
+        this(DEFAULT_WRAPPER_KEY);
+    }
+
+    public AiJsonArraySplitter(String wrapperKey) {
+        this.wrapperKey = wrapperKey;
+    }
+
+    public List<String> feed(CharSequence fragment) {
+        if (fragment.length() == 0) {
+            return Collections.emptyList();
+        }
+
+        List<String> completed = null;
+        for (int i = 0; i < fragment.length(); i++) {
+            char c = fragment.charAt(i);
+            if (root == 0) {
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                root = c;
+            }
+            if (root == '{' && !arrayFound) {
+                whole.append(c);
+            }
+            if (capturing) {
+                element.append(c);
+            }
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                    if (readingKey) {
+                        readingKey = false;
+                        currentKey = key.toString();
+                    }
+                    continue;
+                }
+                if (readingKey) {
+                    key.append(c);
+                }
+                continue;
+            }
+
+            switch (c) {
+                case '"':
+                    inString = true;
+                    if (depth == 1 && root == '{' && expectKey) {
+                        readingKey = true;
+                        expectKey = false;
+                        key.setLength(0);
+                    }
+                    break;
+                case ':':
+                    break;
+                case ',':
+                    if (depth == 1 && root == '{') {
+                        expectKey = true;
+                        currentKey = null;
+                    }
+                    break;
+                case '[':
+                    if (!arrayFound && (depth == 0 && root == '['
+                            || depth == 1 && root == '{' && wrapperKey.equals(currentKey))) {
+                        arrayDepth = depth + 1;
+                        arrayFound = true;
+                        whole.setLength(0);
+                    }
+                    depth++;
+                    break;
+                case '{':
+                    if (depth == arrayDepth && !capturing) {
+                        capturing = true;
+                        element.setLength(0);
+                        element.append(c);
+                    }
+                    depth++;
+                    if (depth == 1 && root == '{') {
+                        expectKey = true;
+                    }
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    if (capturing && depth == arrayDepth) {
+                        capturing = false;
+                        if (completed == null) {
+                            completed = new ArrayList<>();
+                        }
+                        completed.add(element.toString());
+                    } else if (c == ']' && depth == arrayDepth - 1) {
+                        arrayDepth = -1;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return completed != null ? completed : Collections.emptyList();
+    }
+
+    // 流结束时调用：顶层是对象且没有找到结果数组时，把整个对象作为唯一的元素返回
+    public List<String> finish() {
+        if (root != '{' || arrayFound || depth != 0) {
+            return Collections.emptyList();
+        }
+        String text = whole.toString().trim();
+        whole.setLength(0);
+        return text.isEmpty() ? Collections.emptyList() : List.of(text);
+    }
+}
@@ -0,0 +1,99 @@
+package com.myuanxi;
+
+import java.nio.charset.StandardCharsets;
+
+// 请求体构建：前缀/后缀在编译期生成并预先编码为 UTF-8，运行时只需把转义后的用户输入写入中间
+// 先计算转义后的长度再一次性分配，每个请求只产生一个 byte[]
+public final class AiJsonPayload {
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private AiJsonPayload() {
+    }
+
+    public static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] build(byte[] prefix, CharSequence text, byte[] suffix) {
+        byte[] payload = new byte[prefix.length + escapedLength(text) + suffix.length];
+        System.arraycopy(prefix, 0, payload, 0, prefix.length);
+        int position = writeEscaped(text, payload, prefix.length);
+        System.arraycopy(suffix, 0, payload, position, suffix.length);
+        return payload;
+    }
+
+    // 作为 JSON 字符串内容转义并编码为 UTF-8 后的字节数
+    public static int escapedLength(CharSequence text) {
+        int length = 0;
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\' || c == '\b' || c == '\f' || c == '\n' || c == '\r' || c == '\t') {
+                    length += 2;
+                } else if (c < 0x20) {
+                    length += 6;
+                } else {
+                    length += 1;
+                }
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    public static int writeEscaped(CharSequence text, byte[] out, int position) {
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '"': out[position++] = '\\'; out[position++] = '"'; break;
+                    case '\\': out[position++] = '\\'; out[position++] = '\\'; break;
+                    case '\b': out[position++] = '\\'; out[position++] = 'b'; break;
+                    case '\f': out[position++] = '\\'; out[position++] = 'f'; break;
+                    case '\n': out[position++] = '\\'; out[position++] = 'n'; break;
+                    case '\r': out[position++] = '\\'; out[position++] = 'r'; break;
+                    case '\t': out[position++] = '\\'; out[position++] = 't'; break;
+                    default:
+                        if (c < 0x20) {
+                            out[position++] = '\\';
+                            out[position++] = 'u';
+                            out[position++] = '0';
+                            out[position++] = '0';
+                            out[position++] = HEX_DIGITS[c >> 4];
+                            out[position++] = HEX_DIGITS[c & 0xF];
+                        } else {
+                            out[position++] = (byte) c;
+                        }
+                }
+            } else if (c < 0x800) {
+                out[position++] = (byte) (0xC0 | (c >> 6));
+                out[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out[position++] = (byte) (0xF0 | (codePoint >> 18));
+                out[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // 与 String.getBytes 一致，不成对的代理字符替换为 '?'
+                out[position++] = '?';
+            } else {
+                out[position++] = (byte) (0xE0 | (c >> 12));
+                out[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+}
@@ -0,0 +1,298 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// 生成的读取器使用的流式解析工具，直接在 JsonParser 的 token 上读取，不构建 JsonNode 树
+public final class AiJsonReaders {
+
+    private AiJsonReaders() {
+    }
+
+    // 直接读取 parser 缓冲区中的 content 字符，不先复制成 String；chars 只在调用期间有效
+    @FunctionalInterface
+    public interface ContentReader<R> {
+        R read(char[] chars, int offset, int length) throws IOException;
+    }
+
+    // 从 chat/completions 响应中取出 choices[0].message.content，读到后立即返回，不解析剩余部分
+    public static String readContent(JsonParser parser) throws IOException {
+        return readContent(parser, null);
+    }
+
+    // 注册了统计监听器时继续读完响应，把 usage 中的 token 数记录到 trace
+    public static String readContent(JsonParser parser, AiCallTrace trace) throws IOException {
+        return readContent(parser, trace, String::new);
+    }
+
+    public static <R> R readContent(JsonParser parser, AiCallTrace trace, ContentReader<R> reader) throws IOException {
+        if (trace != null && !AiMetrics.isRecording()) {
+            trace = null;
+        }
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new RuntimeException("Invalid API response format: expected JSON object");
+        }
+        boolean hasChoices = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("error".equals(field) && value != JsonToken.VALUE_NULL) {
+                throw new RuntimeException("API Error: " + readErrorMessage(parser));
+            }
+            if ("usage".equals(field) && value == JsonToken.START_OBJECT && trace != null) {
+                readUsage(parser, trace);
+                continue;
+            }
+            if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    break;
+                }
+                hasChoices = true;
+                if (!findMessageContent(parser)) {
+                    throw new RuntimeException("Invalid API response format: missing message content");
+                }
+                R content = reader.read(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                if (trace != null) {
+                    readRemainingUsage(parser, trace);
+                }
+                return content;
+            }
+            parser.skipChildren();
+        }
+        throw new RuntimeException(hasChoices
+                ? "Invalid API response format: missing message content"
+                : "Invalid API response format: missing choices");
+    }
+
+    // 跳过 choices 的剩余部分，回到最外层对象继续查找 usage
+    private static void readRemainingUsage(JsonParser parser, AiCallTrace trace) throws IOException {
+        while (parser.getParsingContext().getNestingDepth() > 1) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return;
+            }
+            if (token.isStructStart()) {
+                parser.skipChildren();
+            }
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && "usage".equals(field)) {
+                readUsage(parser, trace);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // parser 位于 usage 的 START_OBJECT 上
+    private static void readUsage(JsonParser parser, AiCallTrace trace) throws IOException {
+        long promptTokens = 0;
+        long completionTokens = 0;
+        long totalTokens = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "prompt_tokens":
+                    promptTokens = readLong(parser);
+                    break;
+                case "completion_tokens":
+                    completionTokens = readLong(parser);
+                    break;
+                case "total_tokens":
+                    totalTokens = readLong(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        trace.setUsage(promptTokens, completionTokens, totalTokens);
+    }
+
+    private static String readErrorMessage(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            String text = parser.getValueAsString();
+            parser.skipChildren();
+            return text;
+        }
+        String message = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("message".equals(field)) {
+                message = parser.getValueAsString();
+            }
+            parser.skipChildren();
+        }
+        return message;
+    }
+
+    // parser 位于 choices[0] 的 START_OBJECT 上，找到时停在 content 的 VALUE_STRING 上
+    private static boolean findMessageContent(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("message".equals(field) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String messageField = parser.currentName();
+                    JsonToken messageValue = parser.nextToken();
+                    if ("content".equals(messageField) && messageValue == JsonToken.VALUE_STRING) {
+                        return true;
+                    }
+                    parser.skipChildren();
+                }
+                return false;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    // 读取对象数组，规则与 AiJsonArraySplitter 相同：结果数组是顶层数组，或顶层对象中的包装字段 {"items": [...]}；
+    // 数组中只读取对象元素；顶层对象中没有包装字段时把整个对象当作唯一的元素（其他字段中的数组属于该对象）
+    public static <T> List<T> readArray(JsonParser parser, AiEntityReader<T> reader) throws IOException {
+        return readArray(parser, reader, AiJsonArraySplitter.DEFAULT_WRAPPER_KEY);
+    }
+
+    public static <T> List<T> readArray(JsonParser parser, AiEntityReader<T> reader, String wrapperKey) throws IOException {
+        List<T> entities = new ArrayList<>();
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            readElements(parser, reader, entities);
+            return entities;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new RuntimeException("Expected JSON array response");
+        }
+
+        // 包装字段之前的字段先缓存下来，最终没有包装字段时按单个对象回放；通常包装字段在最前面，不产生缓存
+        TokenBuffer buffer = null;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY && wrapperKey.equals(field)) {
+                readElements(parser, reader, entities);
+                return entities;
+            }
+            if (buffer == null) {
+                buffer = new TokenBuffer(parser);
+                buffer.writeStartObject();
+            }
+            buffer.writeFieldName(field);
+            buffer.copyCurrentStructure(parser);
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new RuntimeException("Unexpected end of JSON object");
+        }
+        if (buffer == null) {
+            // 空对象
+            entities.add(reader.read(parser));
+            return entities;
+        }
+        buffer.writeEndObject();
+        try (JsonParser single = buffer.asParser()) {
+            single.nextToken();
+            entities.add(reader.read(single));
+        }
+        return entities;
+    }
+
+    private static <T> void readElements(JsonParser parser, AiEntityReader<T> reader, List<T> entities) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new RuntimeException("Unexpected end of JSON array");
+            }
+            if (token == JsonToken.START_OBJECT) {
+                entities.add(reader.read(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // 以下方法读取当前 token 的值；遇到对象或数组时跳过并返回默认值
+
+    public static String readString(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token.isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getValueAsString();
+    }
+
+    public static int readInt(JsonParser parser) throws IOException {
+        skipStructure(parser);
+        return parser.getValueAsInt();
+    }
+
+    public static long readLong(JsonParser parser) throws IOException {
+        skipStructure(parser);
+        return parser.getValueAsLong();
+    }
+
+    public static double readDouble(JsonParser parser) throws IOException {
+        skipStructure(parser);
+        return parser.getValueAsDouble();
+    }
+
+    public static boolean readBoolean(JsonParser parser) throws IOException {
+        skipStructure(parser);
+        return parser.getValueAsBoolean();
+    }
+
+    public static char readChar(JsonParser parser) throws IOException {
+        String text = readString(parser);
+        return text == null || text.isEmpty() ? '\0' : text.charAt(0);
+    }
+
+    public static Integer readBoxedInt(JsonParser parser) throws IOException {
+        return isNull(parser) ? null : readInt(parser);
+    }
+
+    public static Long readBoxedLong(JsonParser parser) throws IOException {
+        return isNull(parser) ? null : readLong(parser);
+    }
+
+    public static Double readBoxedDouble(JsonParser parser) throws IOException {
+        return isNull(parser) ? null : readDouble(parser);
+    }
+
+    public static Boolean readBoxedBoolean(JsonParser parser) throws IOException {
+        return isNull(parser) ? null : readBoolean(parser);
+    }
+
+    public static Character readBoxedChar(JsonParser parser) throws IOException {
+        return isNull(parser) ? null : readChar(parser);
+    }
+
+    public static <E extends Enum<E>> E readEnum(JsonParser parser, Class<E> type) throws IOException {
+        String text = readString(parser);
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(text)) {
+                return constant;
+            }
+        }
+        throw new RuntimeException("Unknown " + type.getSimpleName() + " value: " + text);
+    }
+
+    private static boolean isNull(JsonParser parser) {
+        return parser.currentToken() == JsonToken.VALUE_NULL;
+    }
+
+    private static void skipStructure(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.myuanxi;
+
+// 全局的请求统计配置：监听器默认不做任何事；请求和响应内容的日志默认关闭，开启后通过 System.Logger 输出
+public final class AiMetrics {
+
+    private static final System.Logger LOGGER = System.getLogger("com.myuanxi.AiEntity");
+
+    private static volatile AiCallListener listener = AiCallListener.NOOP;
+    private static volatile boolean payloadLogging;
+
+    private AiMetrics() {
+    }
+
+    public static AiCallListener getListener() {
+        return listener;
+    }
+
+    public static void setListener(AiCallListener callListener) {
+        listener = callListener == null ? AiCallListener.NOOP : callListener;
+    }
+
+    public static boolean isRecording() {
+        return listener != AiCallListener.NOOP;
+    }
+
+    public static boolean isPayloadLogging() {
+        return payloadLogging;
+    }
+
+    public static void setPayloadLogging(boolean enabled) {
+        payloadLogging = enabled;
+    }
+
+    public static void logPayload(String entityType, String label, String payload) {
+        LOGGER.log(System.Logger.Level.INFO, "{0} {1}: {2}", entityType, label, payload);
+    }
+
+    static void publish(AiCallTrace trace) {
+        AiCallListener callListener = listener;
+        if (callListener == AiCallListener.NOOP) {
+            return;
+        }
+        try {
+            callListener.onCall(trace);
+        } catch (RuntimeException e) {
+            // 统计失败不影响请求结果
+            LOGGER.log(System.Logger.Level.WARNING, "AiCallListener failed", e);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// 微批处理：把并发的单对象请求在 maxItems 个或 maxDelayMillis 毫秒内合并为一次模型调用，
+// 再把结果按编号分发给各自的调用方；批量结果中缺失或格式错误的项回退为单独调用
+public final class AiMicroBatcher<R> {
+
+    private final int maxItems;
+    private final long maxDelayMillis;
+    private final Function<List<String>, CompletableFuture<List<R>>> batchCall;
+    private final Function<String, CompletableFuture<R>> singleCall;
+
+    private Batch<R> current;
+
+    public AiMicroBatcher(
+            int maxItems,
+            long maxDelayMillis,
+            Function<List<String>, CompletableFuture<List<R>>> batchCall,
+            Function<String, CompletableFuture<R>> singleCall
+    ) {
+        if (maxItems < 1) {
+            throw new IllegalArgumentException("maxItems must be positive: " + maxItems);
+        }
+        this.maxItems = maxItems;
+        this.maxDelayMillis = Math.max(0, maxDelayMillis);
+        this.batchCall = batchCall;
+        this.singleCall = singleCall;
+    }
+
+    public CompletableFuture<R> submit(String input) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        Batch<R> full = null;
+        synchronized (this) {
+            if (current == null) {
+                Batch<R> batch = new Batch<>();
+                current = batch;
+                CompletableFuture.delayedExecutor(maxDelayMillis, TimeUnit.MILLISECONDS).execute(() -> flushIfCurrent(batch));
+            }
+            current.inputs.add(input);
+            current.futures.add(future);
+            if (current.inputs.size() >= maxItems) {
+                full = current;
+                current = null;
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return future;
+    }
+
+    private void flushIfCurrent(Batch<R> batch) {
+        synchronized (this) {
+            if (current != batch) {
+                return;
+            }
+            current = null;
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Batch<R> batch) {
+        if (batch.inputs.size() == 1) {
+            pipe(singleCall(batch.inputs.get(0)), batch.futures.get(0));
+            return;
+        }
+
+        CompletableFuture<List<R>> results;
+        try {
+            results = batchCall.apply(batch.inputs);
+        } catch (RuntimeException e) {
+            results = CompletableFuture.failedFuture(e);
+        }
+        results.whenComplete((values, error) -> {
+            for (int i = 0; i < batch.inputs.size(); i++) {
+                R value = error == null && i < values.size() ? values.get(i) : null;
+                if (value != null) {
+                    batch.futures.get(i).complete(value);
+                } else {
+                    pipe(singleCall(batch.inputs.get(i)), batch.futures.get(i));
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<R> singleCall(String input) {
+        try {
+            return singleCall.apply(input);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static <R> void pipe(CompletableFuture<R> source, CompletableFuture<R> target) {
+        source.whenComplete((value, error) -> {
+            if (error == null) {
+                target.complete(value);
+            } else {
+                target.completeExceptionally(error);
+            }
+        });
+    }
+
+    // 批量请求的用户消息：{"items":[{"id":0,"text":"..."},...]}
+    public static String itemsJson(List<String> inputs) {
+        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < inputs.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i).append(",\"text\":\"");
+            encoder.quoteAsString(inputs.get(i), json);
+            json.append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    // 解析 {"results":[{"id":0,...},...]}，返回按编号排列的每项 JSON（不含 id）；缺失或无法解析的项为 null
+    public static List<String> parseResults(ObjectMapper mapper, String content, int size, AiEntityReader<?> reader) {
+        String[] results = new String[size];
+        JsonNode root;
+        try {
+            root = mapper.readTree(content);
+        } catch (IOException e) {
+            return Arrays.asList(results);
+        }
+
+        JsonNode items = root.isArray() ? root : root.path("results");
+        if (!items.isArray()) {
+            items = findArray(root);
+        }
+        if (items == null) {
+            return Arrays.asList(results);
+        }
+
+        for (JsonNode item : items) {
+            if (!item.isObject()) {
+                continue;
+            }
+            int id = item.path("id").asInt(-1);
+            if (id < 0 || id >= size || results[id] != null) {
+                continue;
+            }
+            ObjectNode entity = ((ObjectNode) item).deepCopy();
+            entity.remove("id");
+            try (JsonParser parser = entity.traverse(mapper)) {
+                parser.nextToken();
+                reader.read(parser);
+                results[id] = entity.toString();
+            } catch (IOException | RuntimeException e) {
+                // 格式错误的项稍后单独调用
+            }
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    private static JsonNode findArray(JsonNode root) {
+        for (JsonNode value : root) {
+            if (value.isArray()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static final class Batch<R> {
+        final List<String> inputs = new ArrayList<>();
+        final List<CompletableFuture<R>> futures = new ArrayList<>();
+    }
+}
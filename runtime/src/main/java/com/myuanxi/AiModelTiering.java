@@ -0,0 +1,102 @@
+package com.myuanxi;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// 按输入大小选择模型：估算的输入 token 数不超过某一档的上限时使用该档（上限最小的一档）的模型，
+// 超过所有上限时使用 defaultModel；数组请求输出较长，默认直接使用 defaultModel
+// 模型名可以包含 ${NAME:default} 占位符，在每次选择时按 AiConfig 解析
+public final class AiModelTiering {
+
+    private final int[] maxInputTokens;
+    private final String[] models;
+    private final String defaultModel;
+    private final String arrayModel;
+
+    private AiModelTiering(Builder builder) {
+        List<Tier> tiers = new ArrayList<>(builder.tiers);
+        tiers.sort(Comparator.comparingInt(tier -> tier.maxInputTokens));
+        this.maxInputTokens = new int[tiers.size()];
+        this.models = new String[tiers.size()];
+        for (int i = 0; i < tiers.size(); i++) {
+            maxInputTokens[i] = tiers.get(i).maxInputTokens;
+            models[i] = tiers.get(i).model;
+        }
+        this.defaultModel = builder.defaultModel;
+        this.arrayModel = builder.arrayModel != null ? builder.arrayModel : builder.defaultModel;
+    }
+
+    // defaultModel 为 null 时，超过所有上限的输入使用 @AiEntity 中配置的模型
+    public static Builder builder(String defaultModel) {
+        return new Builder(defaultModel);
+    }
+
+    // 返回 null 表示使用 @AiEntity 中配置的模型
+    public String select(String inputText, boolean array) {
+        if (array) {
+            return AiConfig.resolve(arrayModel);
+        }
+        if (models.length > 0) {
+            // 按字符数就能判断超过最大上限时不必逐字符估算
+            int length = inputText != null ? inputText.length() : 0;
+            if (length / 4 <= maxInputTokens[models.length - 1]) {
+                int tokens = AiInputChunker.estimateTokens(inputText);
+                for (int i = 0; i < models.length; i++) {
+                    if (tokens <= maxInputTokens[i]) {
+                        return AiConfig.resolve(models[i]);
+                    }
+                }
+            }
+        }
+        return AiConfig.resolve(defaultModel);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("AiModelTiering{");
+        for (int i = 0; i < models.length; i++) {
+            text.append("<=").append(maxInputTokens[i]).append(": ").append(models[i]).append(", ");
+        }
+        return text.append("default: ").append(defaultModel).append(", array: ").append(arrayModel).append('}').toString();
+    }
+
+    private static final class Tier {
+        private final int maxInputTokens;
+        private final String model;
+
+        private Tier(int maxInputTokens, String model) {
+            this.maxInputTokens = maxInputTokens;
+            this.model = model;
+        }
+    }
+
+    public static final class Builder {
+        private final String defaultModel;
+        private final List<Tier> tiers = new ArrayList<>();
+        private String arrayModel;
+
+        private Builder(String defaultModel) {
+            this.defaultModel = defaultModel;
+        }
+
+        // 估算的输入 token 数不超过 maxInputTokens 时使用 model
+        public Builder tier(int maxInputTokens, String model) {
+            if (maxInputTokens < 0) {
+                throw new IllegalArgumentException("maxInputTokens must not be negative: " + maxInputTokens);
+            }
+            tiers.add(new Tier(maxInputTokens, model));
+            return this;
+        }
+
+        // 数组请求使用的模型，默认与 defaultModel 相同
+        public Builder arrayModel(String model) {
+            this.arrayModel = model;
+            return this;
+        }
+
+        public AiModelTiering build() {
+            return new AiModelTiering(this);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.myuanxi;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+// 响应体的 InputStream 处理：按 Content-Encoding 解压、统计实际传输的字节数，以及读完剩余内容
+// JDK 没有内置 brotli 解码，因此请求时只声明 gzip 和 deflate
+final class AiResponseBodies {
+
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private AiResponseBodies() {
+    }
+
+    static InputStream decode(InputStream body, HttpHeaders headers) throws IOException {
+        String encoding = headers.firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "":
+            case "identity":
+                return body;
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(body, BUFFER_SIZE);
+            case "deflate":
+                return new InflaterInputStream(body);
+            default:
+                throw new IOException("Unsupported Content-Encoding: " + encoding);
+        }
+    }
+
+    // 解析器读到 content 后就不再读取；HTTP/1.1 下提前关闭响应体会断开连接，读完剩余部分连接才能回到连接池
+    static void drainAndClose(InputStream body) {
+        try (body) {
+            body.skip(Long.MAX_VALUE);
+            while (body.read() >= 0) {
+                body.skip(Long.MAX_VALUE);
+            }
+        } catch (IOException ignored) {
+            // 剩余部分读取失败只影响连接复用，不影响已经解析出的结果
+        }
+    }
+
+    // 统计从网络读到的字节数（压缩时为压缩后的大小）
+    static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
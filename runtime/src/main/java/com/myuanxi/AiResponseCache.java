@@ -0,0 +1,565 @@
+package com.myuanxi;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// AI 响应缓存：有界的内存 LRU/TTL 层 + 可选的追加写磁盘层（启动时内存映射并建立索引）
+// 磁盘文件超过上限时压缩：只保留每个 key 最新且未过期的记录，仍然太大时丢弃最旧的记录
+// 相同 key 的并发请求会合并为一次调用
+public final class AiResponseCache implements AutoCloseable {
+
+    private static final int KEY_BYTES = 32;
+    private static final int RECORD_HEADER_BYTES = KEY_BYTES + Long.BYTES + Integer.BYTES;
+    private static final HexFormat HEX = HexFormat.of();
+    public static final long DEFAULT_MAX_DISK_BYTES = 256L << 20;
+
+    private static volatile AiResponseCache defaultCache;
+
+    private final long ttlMillis;
+    private final Map<String, MemoryEntry> memory;
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final DiskTier disk;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    public AiResponseCache(int maxEntries, Duration ttl) {
+        this(maxEntries, ttl, null);
+    }
+
+    // ttl 为 null 或 0 表示不过期；diskFile 为 null 表示只使用内存层
+    public AiResponseCache(int maxEntries, Duration ttl, Path diskFile) {
+        this(maxEntries, ttl, diskFile, DEFAULT_MAX_DISK_BYTES);
+    }
+
+    // 磁盘文件超过 maxDiskBytes 时压缩到一半以下
+    public AiResponseCache(int maxEntries, Duration ttl, Path diskFile, long maxDiskBytes) {
+        this(maxEntries, ttl, diskFile, maxDiskBytes, Integer.MAX_VALUE);
+    }
+
+    // mapLimitBytes 为内存映射的上限，测试中用来覆盖不映射文件时的扫描和读取
+    AiResponseCache(int maxEntries, Duration ttl, Path diskFile, long maxDiskBytes, long mapLimitBytes) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.ttlMillis = ttl == null ? 0 : ttl.toMillis();
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MemoryEntry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        try {
+            this.disk = diskFile == null ? null : new DiskTier(diskFile, maxDiskBytes, mapLimitBytes, ttlMillis);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open cache file: " + diskFile, e);
+        }
+    }
+
+    public static AiResponseCache getDefault() {
+        return defaultCache;
+    }
+
+    // 设置所有生成的工厂类默认使用的缓存，传入 null 关闭缓存
+    public static void setDefault(AiResponseCache cache) {
+        defaultCache = cache;
+    }
+
+    public static String key(String model, String systemPrompt, String inputText, double temperature) {
+        return key(model, null, systemPrompt, inputText, temperature);
+    }
+
+    // endpoint 为 null 时不参与 key；同一模型发往不同地址（例如单次调用覆盖的地址）时结果分开缓存
+    public static String key(String model, String endpoint, String systemPrompt, String inputText, double temperature) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, "model", model);
+            if (endpoint != null) {
+                update(digest, "endpoint", endpoint);
+            }
+            update(digest, "systemPrompt", systemPrompt);
+            update(digest, "inputText", inputText);
+            update(digest, "temperature", Double.toString(temperature));
+            return HEX.formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String name, String part) {
+        if (part == null) {
+            throw new IllegalArgumentException("Cache key part must not be null: " + name);
+        }
+        byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    public String get(String key, Supplier<String> loader) {
+        return get(key, loader, Function.identity(), value -> true);
+    }
+
+    // converter 把响应文本转换为结果；只有转换成功且 cacheable 接受该结果时才写入缓存，
+    // 解析或校验失败的响应不会留在缓存中被后续调用反复命中
+    public <V> V get(String key, Supplier<String> loader, Function<String, V> converter, Predicate<? super V> cacheable) {
+        try {
+            return getAsync(key, () -> CompletableFuture.completedFuture(loader.get()), converter, cacheable).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<String> getAsync(String key, Supplier<CompletableFuture<String>> loader) {
+        return getAsync(key, loader, Function.identity(), value -> true);
+    }
+
+    // 合并的并发请求拿到同一份响应文本后各自转换
+    public <V> CompletableFuture<V> getAsync(String key, Supplier<CompletableFuture<String>> loader,
+                                             Function<String, V> converter, Predicate<? super V> cacheable) {
+        String cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached).thenApply(converter);
+        }
+
+        CompletableFuture<String> promise = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            collapsed.increment();
+            return existing.thenApply(converter);
+        }
+
+        misses.increment();
+        CompletableFuture<V> result = new CompletableFuture<>();
+        try {
+            loader.get().whenComplete((value, error) -> {
+                Throwable failure = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                V converted = null;
+                try {
+                    if (failure == null) {
+                        converted = converter.apply(value);
+                        if (cacheable.test(converted)) {
+                            put(key, value);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                } finally {
+                    inFlight.remove(key, promise);
+                    if (error == null) {
+                        promise.complete(value);
+                    } else {
+                        promise.completeExceptionally(failure);
+                    }
+                }
+                if (failure == null) {
+                    result.complete(converted);
+                } else {
+                    result.completeExceptionally(failure);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private String lookup(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            MemoryEntry entry = memory.get(key);
+            if (entry != null) {
+                if (!isExpired(entry.writtenAt, now)) {
+                    hits.increment();
+                    return entry.value;
+                }
+                memory.remove(key);
+                evictions.increment();
+            }
+        }
+
+        if (disk != null) {
+            DiskTier.Record record = disk.read(key);
+            if (record != null && !isExpired(record.writtenAt, now)) {
+                hits.increment();
+                diskHits.increment();
+                synchronized (memory) {
+                    memory.put(key, new MemoryEntry(record.value, record.writtenAt));
+                }
+                return record.value;
+            }
+        }
+        return null;
+    }
+
+    private void put(String key, String value) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            memory.put(key, new MemoryEntry(value, now));
+        }
+        // 只有 key() 生成的 SHA-256 key 才会写入磁盘层
+        if (disk != null && key.length() == KEY_BYTES * 2) {
+            disk.append(key, value, now);
+        }
+    }
+
+    private boolean isExpired(long writtenAt, long now) {
+        return ttlMillis > 0 && now - writtenAt > ttlMillis;
+    }
+
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getCollapsed() {
+        return collapsed.sum();
+    }
+
+    // 磁盘文件当前的有效字节数，没有磁盘层时为 0
+    public long getDiskBytes() {
+        return disk != null ? disk.size() : 0;
+    }
+
+    public long getCompactions() {
+        return disk != null ? disk.compactions() : 0;
+    }
+
+    @Override
+    public void close() {
+        if (disk != null) {
+            disk.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AiResponseCache{hits=" + getHits() +
+                ", diskHits=" + getDiskHits() +
+                ", misses=" + getMisses() +
+                ", evictions=" + getEvictions() +
+                ", collapsed=" + getCollapsed() +
+                ", compactions=" + getCompactions() +
+                '}';
+    }
+
+    private static final class MemoryEntry {
+        final String value;
+        final long writtenAt;
+
+        MemoryEntry(String value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    // 磁盘层文件格式：连续的记录 [32 字节 key][8 字节写入时间][4 字节长度][UTF-8 内容]
+    private static final class DiskTier {
+        private final Path file;
+        private final long maxBytes;
+        private final long mapLimit;
+        private final long ttlMillis;
+        private final Map<String, Location> index = new HashMap<>();
+        // 压缩后替换为新文件，读取时在锁内取得当前的 channel 和映射
+        private FileChannel channel;
+        private MappedByteBuffer mapped;
+        private long writePosition;
+        private long compactions;
+
+        DiskTier(Path file, long maxBytes, long mapLimit, long ttlMillis) throws IOException {
+            if (maxBytes < 1) {
+                throw new IllegalArgumentException("maxDiskBytes must be positive: " + maxBytes);
+            }
+            this.file = file;
+            this.maxBytes = maxBytes;
+            this.mapLimit = Math.min(mapLimit, Integer.MAX_VALUE);
+            this.ttlMillis = ttlMillis;
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            this.mapped = map(channel, size);
+            // 扫描用按位置读取，不依赖内存映射，超过 2GB 的文件也能完整建立索引
+            this.writePosition = scan(size);
+            if (writePosition < size) {
+                // 只丢弃末尾上次异常退出时写了一半的记录
+                channel.truncate(writePosition);
+            }
+        }
+
+        private MappedByteBuffer map(FileChannel source, long size) throws IOException {
+            return size > 0 && size <= mapLimit ? source.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+        }
+
+        private long scan(long size) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+            byte[] keyBytes = new byte[KEY_BYTES];
+            long position = 0;
+            while (size - position >= RECORD_HEADER_BYTES) {
+                header.clear();
+                while (header.hasRemaining()) {
+                    if (channel.read(header, position + header.position()) < 0) {
+                        return position;
+                    }
+                }
+                header.flip();
+                header.get(keyBytes);
+                long writtenAt = header.getLong();
+                int length = header.getInt();
+                long valueOffset = position + RECORD_HEADER_BYTES;
+                if (length < 0 || size - valueOffset < length) {
+                    break;
+                }
+                index.put(HEX.formatHex(keyBytes), new Location(valueOffset, length, writtenAt));
+                position = valueOffset + length;
+            }
+            return position;
+        }
+
+        Record read(String key) {
+            Location location;
+            FileChannel source;
+            MappedByteBuffer view;
+            synchronized (this) {
+                location = index.get(key);
+                source = channel;
+                view = mapped;
+            }
+            if (location == null) {
+                return null;
+            }
+
+            byte[] bytes = new byte[location.length];
+            if (view != null && location.offset + location.length <= view.limit()) {
+                view.get((int) location.offset, bytes);
+            } else {
+                // 读取期间发生压缩时旧的 channel 已关闭，按未命中处理
+                try {
+                    ByteBuffer target = ByteBuffer.wrap(bytes);
+                    long position = location.offset;
+                    while (target.hasRemaining()) {
+                        int read = source.read(target, position + target.position());
+                        if (read < 0) {
+                            return null;
+                        }
+                    }
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+            return new Record(new String(bytes, StandardCharsets.UTF_8), location.writtenAt);
+        }
+
+        synchronized void append(String key, String value, long writtenAt) {
+            byte[] keyBytes;
+            try {
+                keyBytes = HEX.parseHex(key);
+            } catch (IllegalArgumentException e) {
+                return;
+            }
+            byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + valueBytes.length);
+            record.put(keyBytes).putLong(writtenAt).putInt(valueBytes.length).put(valueBytes).flip();
+            long start = writePosition;
+            try {
+                long position = start;
+                while (record.hasRemaining()) {
+                    position += channel.write(record, position);
+                }
+                writePosition = position;
+                index.put(key, new Location(start + RECORD_HEADER_BYTES, valueBytes.length, writtenAt));
+            } catch (IOException e) {
+                // 磁盘层写入失败不影响本次调用，内存层仍然可用
+                truncateQuietly(start);
+                return;
+            }
+            if (writePosition > maxBytes) {
+                compact(writtenAt);
+            }
+        }
+
+        synchronized long size() {
+            return writePosition;
+        }
+
+        synchronized long compactions() {
+            return compactions;
+        }
+
+        // 把每个 key 最新且未过期的记录按写入时间从新到旧写入临时文件，超过上限一半的旧记录被丢弃，
+        // 再原子替换原文件；失败时保留原文件，下次追加时再试
+        private void compact(long now) {
+            List<Map.Entry<String, Location>> live = new ArrayList<>(index.size());
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                if (ttlMillis <= 0 || now - entry.getValue().writtenAt <= ttlMillis) {
+                    live.add(entry);
+                }
+            }
+            live.sort(Comparator.comparingLong((Map.Entry<String, Location> entry) -> entry.getValue().writtenAt).reversed());
+
+            Path temp = file.resolveSibling(file.getFileName() + ".compact");
+            Map<String, Location> compacted = new HashMap<>();
+            long budget = maxBytes / 2;
+            long position = 0;
+            try {
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+                    for (Map.Entry<String, Location> entry : live) {
+                        Location location = entry.getValue();
+                        long recordBytes = RECORD_HEADER_BYTES + (long) location.length;
+                        if (position + recordBytes > budget) {
+                            continue;
+                        }
+                        header.clear();
+                        header.put(HEX.parseHex(entry.getKey())).putLong(location.writtenAt).putInt(location.length).flip();
+                        while (header.hasRemaining()) {
+                            out.write(header);
+                        }
+                        long copied = 0;
+                        while (copied < location.length) {
+                            long transferred = channel.transferTo(location.offset + copied, location.length - copied, out);
+                            if (transferred <= 0) {
+                                throw new IOException("Unexpected end of cache file");
+                            }
+                            copied += transferred;
+                        }
+                        compacted.put(entry.getKey(), new Location(position + RECORD_HEADER_BYTES, location.length, location.writtenAt));
+                        position += recordBytes;
+                    }
+                    out.force(false);
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                deleteQuietly(temp);
+                return;
+            }
+
+            // 原文件已被替换，旧的 channel 指向已删除的文件，重新打开
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // 旧文件已不再使用
+            }
+            index.clear();
+            mapped = null;
+            writePosition = 0;
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                mapped = map(channel, position);
+                writePosition = position;
+                index.putAll(compacted);
+                compactions++;
+            } catch (IOException e) {
+                // 无法重新打开时磁盘层停用：旧 channel 已关闭，之后的读写都按失败处理，内存层不受影响
+            }
+        }
+
+        private static void deleteQuietly(Path path) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // 下次压缩时会被覆盖
+            }
+        }
+
+        private void truncateQuietly(long position) {
+            try {
+                channel.truncate(position);
+            } catch (IOException ignored) {
+                // 下次启动时 scan 会丢弃不完整的记录
+            }
+        }
+
+        synchronized void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to close cache file", e);
+            }
+        }
+
+        private static final class Location {
+            final long offset;
+            final int length;
+            final long writtenAt;
+
+            Location(long offset, int length, long writtenAt) {
+                this.offset = offset;
+                this.length = length;
+                this.writtenAt = writtenAt;
+            }
+        }
+
+        private static final class Record {
+            final String value;
+            final long writtenAt;
+
+            Record(String value, long writtenAt) {
+                this.value = value;
+                this.writtenAt = writtenAt;
+            }
+        }
+    }
+}
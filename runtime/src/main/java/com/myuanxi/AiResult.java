@@ -0,0 +1,37 @@
+package com.myuanxi;
+
+// 批量调用中单个输入的结果：要么是成功创建的对象，要么是该项失败的原因
+public final class AiResult<T> {
+    private final T value;
+    private final Throwable error;
+
+    private AiResult(T value, Throwable error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    public static <T> AiResult<T> success(T value) {
+        return new AiResult<>(value, null);
+    }
+
+    public static <T> AiResult<T> failure(Throwable error) {
+        return new AiResult<>(null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess() ? "AiResult{value=" + value + '}' : "AiResult{error=" + error + '}';
+    }
+}
@@ -0,0 +1,185 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import javax.net.ssl.SSLSession;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+// 不访问网络的传输层，用于测试：根据请求体返回固定的 chat/completions 响应
+public final class AiStubTransport implements AiTransport {
+
+    private final Function<String, String> responder;
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    // responder 接收请求体，返回完整的响应体
+    public AiStubTransport(Function<String, String> responder) {
+        this.responder = responder;
+    }
+
+    // contentResponder 接收请求体，返回模型输出的内容（choices[0].message.content）
+    public static AiStubTransport ofContent(Function<String, String> contentResponder) {
+        return new AiStubTransport(body -> chatCompletion(contentResponder.apply(body)));
+    }
+
+    public static String chatCompletion(String content) {
+        StringBuilder json = new StringBuilder("{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"");
+        JsonStringEncoder.getInstance().quoteAsString(content, json);
+        return json.append("\"}}]}").toString();
+    }
+
+    // 收到的请求体，按接收顺序排列
+    public List<String> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return CompletableFuture.supplyAsync(() -> new String(readBody(request), StandardCharsets.UTF_8))
+                .thenCompose(body -> {
+                    requests.add(body);
+                    byte[] response = responder.apply(body).getBytes(StandardCharsets.UTF_8);
+                    HttpHeaders headers = HttpHeaders.of(
+                            Map.of("Content-Type", List.of("application/json"),
+                                    "Content-Length", List.of(String.valueOf(response.length))),
+                            (name, value) -> true);
+                    return deliver(request, handler, 200, headers, ByteBuffer.wrap(response));
+                });
+    }
+
+    // 把完整的响应体交给调用方的 BodyHandler，AiCassetteTransport 回放时同样使用
+    static <T> CompletableFuture<HttpResponse<T>> deliver(
+            HttpRequest request, HttpResponse.BodyHandler<T> handler, int statusCode, HttpHeaders headers, ByteBuffer body) {
+        HttpResponse.ResponseInfo info = new HttpResponse.ResponseInfo() {
+            @Override
+            public int statusCode() {
+                return statusCode;
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return headers;
+            }
+
+            @Override
+            public HttpClient.Version version() {
+                return HttpClient.Version.HTTP_1_1;
+            }
+        };
+        HttpResponse.BodySubscriber<T> subscriber = handler.apply(info);
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onNext(List.of(body));
+        subscriber.onComplete();
+        return subscriber.getBody().toCompletableFuture()
+                .thenApply(value -> new StubResponse<>(request, statusCode, headers, value));
+    }
+
+    // 读取 BodyPublisher 发布的全部字节
+    static byte[] readBody(HttpRequest request) {
+        Optional<HttpRequest.BodyPublisher> publisher = request.bodyPublisher();
+        if (publisher.isEmpty()) {
+            return new byte[0];
+        }
+        HttpResponse.BodySubscriber<byte[]> subscriber = HttpResponse.BodySubscribers.ofByteArray();
+        publisher.get().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscriber.onSubscribe(subscription);
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                subscriber.onNext(List.of(item));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                subscriber.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        });
+        return subscriber.getBody().toCompletableFuture().join();
+    }
+
+    private static final class StubResponse<T> implements HttpResponse<T> {
+        private final HttpRequest request;
+        private final int statusCode;
+        private final HttpHeaders headers;
+        private final T body;
+
+        StubResponse(HttpRequest request, int statusCode, HttpHeaders headers, T body) {
+            this.request = request;
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public int statusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public HttpRequest request() {
+            return request;
+        }
+
+        @Override
+        public Optional<HttpResponse<T>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return headers;
+        }
+
+        @Override
+        public T body() {
+            return body;
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return request.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.myuanxi;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+
+// 发送 HTTP 请求的扩展点：默认使用共享的 AiHttpTransport，测试时可以换成 AiStubTransport 之类的本地实现
+public interface AiTransport {
+
+    <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler);
+}
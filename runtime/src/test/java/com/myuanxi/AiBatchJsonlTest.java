@@ -0,0 +1,147 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AiBatchJsonlTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    // 缺少 name 字段的对象校验失败
+    private final AiEntityClient<JsonNode> client = AiEntityClient.builder("Item", MAPPER::readTree, JsonNode[]::new)
+            .model("test-model")
+            .apiUrl("http://host/v1/chat/completions")
+            .apiKey("key")
+            .payload("{\"model\":\"test-model\",\"messages\":[{\"role\":\"user\",\"content\":\"", "\"}]}")
+            .validation(item -> item.hasNonNull("name") ? 0 : 1, null, List.of("name"), List.of("required"))
+            .build();
+
+    // Batch API 结果行，content 为模型输出的内容
+    private static String resultLine(long index, String content) {
+        return "{\"id\":\"batch_req_" + index + "\",\"custom_id\":\"" + index + "\",\"response\":{\"status_code\":200,"
+                + "\"request_id\":\"r" + index + "\",\"body\":" + AiStubTransport.chatCompletion(content) + "},\"error\":null}";
+    }
+
+    private Path resultFile(String... lines) throws IOException {
+        Path file = dir.resolve("results.jsonl");
+        Files.writeString(file, String.join("\n", lines) + "\n", StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private List<AiBatchResult<JsonNode>> importAll(Path file, long offset) {
+        try (Stream<AiBatchResult<JsonNode>> results = client.importBatch(file, offset)) {
+            return results.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void exportsOneRequestPerLine() throws IOException {
+        Path file = dir.resolve("requests.jsonl");
+        List<String> inputs = List.of("first", "with \"quotes\"\nand newline", "第三");
+
+        assertEquals(3, client.exportBatch(inputs.stream(), file, 10));
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            JsonNode line = MAPPER.readTree(lines.get(i));
+            assertEquals(String.valueOf(10 + i), line.get("custom_id").asText());
+            assertEquals("POST", line.get("method").asText());
+            assertEquals(AiBatchJsonl.BATCH_URL, line.get("url").asText());
+            assertEquals(MAPPER.readTree(client.requestBody(inputs.get(i))), line.get("body"));
+            assertEquals(inputs.get(i), line.at("/body/messages/0/content").asText());
+        }
+    }
+
+    @Test
+    void importsResultsAndReportsFailuresPerLine() throws IOException {
+        Path file = resultFile(
+                resultLine(0, "{\"name\":\"a\"}"),
+                "{\"custom_id\":\"1\",\"response\":null,\"error\":{\"code\":\"server_error\",\"message\":\"boom\"}}",
+                "{\"custom_id\":\"2\",\"response\":{\"status_code\":200,\"body\":{\"choi",
+                "",
+                resultLine(3, "{\"other\":true}"),
+                resultLine(4, "not json"),
+                resultLine(5, "{\"name\":\"f\"}"));
+
+        List<AiBatchResult<JsonNode>> results = importAll(file, 0);
+
+        // 空行被跳过，其余每行一个结果
+        assertEquals(6, results.size());
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L), results.stream().map(AiBatchResult::getIndex).toList());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("a", results.get(0).getValue().get("name").asText());
+        assertTrue(results.get(1).getError().getMessage().contains("boom"));
+        // 截断的行：custom_id 已读到，解析失败不影响后续行
+        assertFalse(results.get(2).isSuccess());
+        assertTrue(results.get(3).getError().getMessage().contains("failed validation"));
+        assertFalse(results.get(4).isSuccess());
+        assertTrue(results.get(5).isSuccess());
+        assertEquals("f", results.get(5).getValue().get("name").asText());
+
+        // 最后一个结果的 nextOffset 为文件末尾，偏移单调递增
+        assertEquals(Files.size(file), results.get(5).getNextOffset());
+        for (int i = 1; i < results.size(); i++) {
+            assertTrue(results.get(i).getNextOffset() > results.get(i - 1).getNextOffset());
+        }
+    }
+
+    @Test
+    void resumesFromNextOffset() throws IOException {
+        Path file = resultFile(
+                resultLine(0, "{\"name\":\"a\"}"),
+                "not a json line",
+                resultLine(2, "{\"name\":\"c\"}"),
+                resultLine(3, "{\"name\":\"d\"}"));
+
+        long offset;
+        try (Stream<AiBatchResult<JsonNode>> results = client.importBatch(file)) {
+            // 读两行后中断，保存第二行之后的偏移
+            List<AiBatchResult<JsonNode>> firstTwo = results.limit(2).toList();
+            assertEquals(-1, firstTwo.get(1).getIndex());
+            assertFalse(firstTwo.get(1).isSuccess());
+            offset = firstTwo.get(1).getNextOffset();
+        }
+
+        List<AiBatchResult<JsonNode>> rest = importAll(file, offset);
+        assertEquals(List.of(2L, 3L), rest.stream().map(AiBatchResult::getIndex).toList());
+        assertEquals("c", rest.get(0).getValue().get("name").asText());
+        assertEquals("d", rest.get(1).getValue().get("name").asText());
+        assertEquals(Files.size(file), rest.get(1).getNextOffset());
+
+        // 从文件末尾继续时没有结果
+        assertTrue(importAll(file, Files.size(file)).isEmpty());
+    }
+
+    @Test
+    void handlesCrLfAndMissingFinalNewline() throws IOException {
+        Path file = dir.resolve("results.jsonl");
+        Files.writeString(file, resultLine(0, "{\"name\":\"a\"}") + "\r\n" + resultLine(1, "{\"name\":\"b\"}"),
+                StandardCharsets.UTF_8);
+
+        List<AiBatchResult<JsonNode>> results = importAll(file, 0);
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        assertEquals("b", results.get(1).getValue().get("name").asText());
+        assertEquals(Files.size(file), results.get(1).getNextOffset());
+    }
+}
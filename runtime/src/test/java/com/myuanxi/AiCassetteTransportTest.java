@@ -0,0 +1,146 @@
+package com.myuanxi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AiCassetteTransportTest {
+
+    // 索引条目 32 字节 key + 8 字节偏移，尾部 8 字节索引偏移 + 4 字节条目数 + 4 字节 magic
+    private static final int INDEX_ENTRY_BYTES = 40;
+    private static final int TRAILER_BYTES = 16;
+
+    @TempDir
+    Path dir;
+
+    private final AiStubTransport stub = AiStubTransport.ofContent(body -> "reply to " + body);
+
+    private static HttpRequest request(String body) {
+        return HttpRequest.newBuilder(URI.create("http://host/v1/chat/completions"))
+                .header("Authorization", "Bearer secret")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static String send(AiTransport transport, String body) {
+        return transport.send(request(body), HttpResponse.BodyHandlers.ofString()).join().body();
+    }
+
+    private Path recordCassette(String... bodies) {
+        Path file = dir.resolve("cassette.bin");
+        try (AiCassetteTransport cassette = AiCassetteTransport.record(file, stub)) {
+            assertTrue(cassette.isRecording());
+            for (String body : bodies) {
+                assertEquals(AiStubTransport.chatCompletion("reply to " + body), send(cassette, body));
+            }
+            assertEquals(bodies.length, cassette.size());
+        }
+        return file;
+    }
+
+    @Test
+    void replaysRecordedResponsesWithoutDelegate() throws Exception {
+        Path file = recordCassette("a", "b", "c");
+        assertEquals(3, stub.getRequests().size());
+        // 请求头不参与哈希，磁带中不保存 API 密钥
+        assertFalse(Files.readString(file, StandardCharsets.ISO_8859_1).contains("secret"));
+
+        try (AiCassetteTransport replay = AiCassetteTransport.replay(file)) {
+            assertFalse(replay.isRecording());
+            assertEquals(3, replay.size());
+            for (String body : new String[]{"c", "a", "b"}) {
+                assertEquals(AiStubTransport.chatCompletion("reply to " + body), send(replay, body));
+            }
+            assertEquals(3, replay.getHits());
+            assertEquals(0, replay.getMisses());
+        }
+        // 回放不访问 delegate
+        assertEquals(3, stub.getRequests().size());
+    }
+
+    @Test
+    void rebuildsIndexWhenTrailerIsMissing() throws Exception {
+        Path file = recordCassette("a", "b");
+        // 去掉索引和尾部，模拟录制时异常退出
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2 * INDEX_ENTRY_BYTES - TRAILER_BYTES);
+        }
+
+        try (AiCassetteTransport replay = AiCassetteTransport.replay(file)) {
+            assertEquals(2, replay.size());
+            assertEquals(AiStubTransport.chatCompletion("reply to b"), send(replay, "b"));
+            assertEquals(AiStubTransport.chatCompletion("reply to a"), send(replay, "a"));
+        }
+    }
+
+    @Test
+    void dropsTruncatedRecordWhenRebuildingIndex() throws Exception {
+        Path file = recordCassette("a", "b");
+        // 再截掉最后一条记录的几个字节，只剩第一条完整记录
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2 * INDEX_ENTRY_BYTES - TRAILER_BYTES - 3);
+        }
+
+        try (AiCassetteTransport replay = AiCassetteTransport.replay(file)) {
+            assertEquals(1, replay.size());
+            assertEquals(AiStubTransport.chatCompletion("reply to a"), send(replay, "a"));
+        }
+    }
+
+    @Test
+    void missFailsInReplayMode() {
+        Path file = recordCassette("a");
+
+        try (AiCassetteTransport replay = AiCassetteTransport.replay(file)) {
+            CompletionException e = assertThrows(CompletionException.class, () -> send(replay, "unknown"));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            assertTrue(e.getCause().getMessage().contains("No recorded response"));
+            assertEquals(0, replay.getHits());
+            assertEquals(1, replay.getMisses());
+        }
+        assertEquals(1, stub.getRequests().size());
+    }
+
+    @Test
+    void resumesRecordingExistingCassette() {
+        Path file = recordCassette("a");
+
+        try (AiCassetteTransport cassette = AiCassetteTransport.record(file, stub)) {
+            assertEquals(1, cassette.size());
+            send(cassette, "a");
+            send(cassette, "b");
+            // 已经录制过的请求不会重复写入
+            assertEquals(2, cassette.size());
+        }
+
+        try (AiCassetteTransport replay = AiCassetteTransport.replay(file)) {
+            assertEquals(2, replay.size());
+            assertEquals(AiStubTransport.chatCompletion("reply to a"), send(replay, "a"));
+            assertEquals(AiStubTransport.chatCompletion("reply to b"), send(replay, "b"));
+        }
+    }
+
+    @Test
+    void rejectsNonCassetteFile() throws Exception {
+        Path file = dir.resolve("other.bin");
+        Files.writeString(file, "not a cassette");
+
+        assertThrows(UncheckedIOException.class, () -> AiCassetteTransport.replay(file));
+    }
+}
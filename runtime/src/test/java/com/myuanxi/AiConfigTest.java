@@ -0,0 +1,95 @@
+package com.myuanxi;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AiConfigTest {
+
+    private static final String PROPERTY = "ai.config.test.model";
+    private static final String MISSING = "AI_CONFIG_TEST_MISSING";
+
+    @AfterEach
+    void reset() {
+        System.clearProperty(PROPERTY);
+        AiConfig.set(PROPERTY, null);
+    }
+
+    @Test
+    void systemPropertyWithAndWithoutDefault() {
+        System.setProperty(PROPERTY, "gpt-4o-mini");
+        assertEquals("gpt-4o-mini", AiConfig.resolve("${" + PROPERTY + "}"));
+        assertEquals("gpt-4o-mini", AiConfig.resolve("${" + PROPERTY + ":gpt-3.5-turbo}"));
+    }
+
+    @Test
+    void environmentVariable() {
+        // 环境变量无法在进程内设置，使用一定存在的 PATH
+        String path = System.getenv("PATH");
+        assertNotNull(path);
+        assertEquals(path, AiConfig.resolve("${PATH}"));
+        assertEquals(path, AiConfig.resolve("${PATH:unused}"));
+    }
+
+    @Test
+    void missingVariable() {
+        assertEquals("fallback", AiConfig.resolve("${" + MISSING + ":fallback}"));
+        assertEquals("", AiConfig.resolve("${" + MISSING + "}"));
+        // 默认值可以为空，也可以包含冒号
+        assertEquals("", AiConfig.resolve("${" + MISSING + ":}"));
+        assertEquals("http://localhost:8080/v1", AiConfig.resolve("${" + MISSING + ":http://localhost:8080/v1}"));
+    }
+
+    @Test
+    void multiplePlaceholders() {
+        System.setProperty(PROPERTY, "m");
+        assertEquals("https://host/m/chat?key=",
+                AiConfig.resolve("${" + MISSING + ":https://host}/${" + PROPERTY + "}/chat?key=${" + MISSING + "}"));
+    }
+
+    @Test
+    void literalDollar() {
+        assertEquals("costs $5, ${not closed", AiConfig.resolve("costs $5, ${not closed"));
+        assertEquals("$5 and $x", AiConfig.resolve("$5 and $x"));
+        // 替换值中的 $ 和反斜杠原样保留
+        System.setProperty(PROPERTY, "a$1\\b");
+        assertEquals("[a$1\\b] $", AiConfig.resolve("[${" + PROPERTY + "}] $"));
+    }
+
+    @Test
+    void withoutPlaceholdersReturnsSameInstance() {
+        String template = "gpt-4o-mini";
+        assertSame(template, AiConfig.resolve(template));
+        assertNull(AiConfig.resolve(null));
+    }
+
+    @Test
+    void lookupOrder(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("ai.properties");
+        Files.writeString(file, PROPERTY + "=from-file\n");
+        long version = AiConfig.version();
+        AiConfig.load(file);
+        assertTrue(AiConfig.version() > version);
+        assertEquals("from-file", AiConfig.resolve("${" + PROPERTY + "}"));
+
+        System.setProperty(PROPERTY, "from-property");
+        assertEquals("from-property", AiConfig.resolve("${" + PROPERTY + "}"));
+
+        AiConfig.set(PROPERTY, "from-set");
+        assertEquals("from-set", AiConfig.resolve("${" + PROPERTY + "}"));
+
+        // 清空文件，避免影响其他测试
+        Files.writeString(file, "");
+        AiConfig.reload();
+    }
+}
@@ -0,0 +1,262 @@
+package com.myuanxi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AiEndpointRouterTest {
+
+    private static final AtomicInteger ENDPOINTS = new AtomicInteger();
+
+    // 调度器按地址全局共享，每个地址只在一个测试中使用
+    private static AiEndpoint endpoint(String name) {
+        String url = "http://" + name + "-" + ENDPOINTS.incrementAndGet() + "/v1/chat/completions";
+        return AiEndpoint.of(url, "k", null);
+    }
+
+    // 按请求地址决定响应的传输层，记录每个地址收到的请求数
+    private static final class FakeTransport implements AiTransport {
+        private final Function<String, CompletableFuture<Integer>> statuses;
+        private final Map<String, Integer> calls = new ConcurrentHashMap<>();
+
+        FakeTransport(Function<String, CompletableFuture<Integer>> statuses) {
+            this.statuses = statuses;
+        }
+
+        @Override
+        public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+            String url = request.uri().toString();
+            calls.merge(url, 1, Integer::sum);
+            HttpHeaders headers = HttpHeaders.of(Map.of(), (name, value) -> true);
+            return statuses.apply(url).thenCompose(status -> AiStubTransport.deliver(
+                    request, handler, status, headers, ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8))));
+        }
+
+        int calls(AiEndpoint endpoint) {
+            return calls.getOrDefault(endpoint.getUrl(), 0);
+        }
+    }
+
+    private static HttpResponse<String> send(AiEndpointRouter router, AiTransport transport, AiCallTrace trace) {
+        return router.send(transport,
+                endpoint -> HttpRequest.newBuilder(URI.create(endpoint.getUrl()))
+                        .POST(HttpRequest.BodyPublishers.ofString("{}")).build(),
+                trace).join();
+    }
+
+    @Test
+    void failsOverAndOpensBreaker() {
+        AiEndpoint dead = endpoint("dead").setCircuitBreaker(2, Duration.ofMinutes(1));
+        dead.getScheduler().setMaxRetries(0);
+        AiEndpoint live = endpoint("live");
+        FakeTransport transport = new FakeTransport(url -> url.equals(dead.getUrl())
+                ? CompletableFuture.failedFuture(new IOException("connection refused"))
+                : CompletableFuture.completedFuture(200));
+        AiEndpointRouter router = AiEndpointRouter.of(AiEndpointRouter.Policy.LEAST_OUTSTANDING, dead, live);
+
+        // 得分相同时随机选择，20 个请求足以让失败的地址被选中两次
+        for (int i = 0; i < 20; i++) {
+            AiCallTrace trace = new AiCallTrace("Test");
+            assertEquals(200, send(router, transport, trace).statusCode());
+            // 每个请求最终都由可用的地址返回
+            assertEquals(live.getUrl(), trace.getEndpoint());
+        }
+
+        // 失败的地址连续失败两次后熔断，不再被选中
+        assertTrue(dead.isOpen());
+        assertTrue(transport.calls(dead) <= 2, String.valueOf(transport.calls(dead)));
+        assertEquals(20, transport.calls(live));
+        assertEquals(0, dead.getOutstanding());
+        assertEquals(0, live.getOutstanding());
+    }
+
+    @Test
+    void failsOverOnRetryableStatus() {
+        AiEndpoint overloaded = endpoint("overloaded");
+        overloaded.getScheduler().setMaxRetries(0);
+        AiEndpoint live = endpoint("live");
+        FakeTransport transport = new FakeTransport(url -> CompletableFuture.completedFuture(
+                url.equals(overloaded.getUrl()) ? 503 : 200));
+        AiEndpointRouter router = AiEndpointRouter.of(AiEndpointRouter.Policy.LEAST_OUTSTANDING, overloaded, live);
+
+        for (int i = 0; i < 5; i++) {
+            AiCallTrace trace = new AiCallTrace("Test");
+            assertEquals(200, send(router, transport, trace).statusCode());
+            assertEquals(live.getUrl(), trace.getEndpoint());
+        }
+    }
+
+    @Test
+    void returnsLastErrorWhenAllEndpointsFail() {
+        AiEndpoint first = endpoint("first");
+        AiEndpoint second = endpoint("second");
+        first.getScheduler().setMaxRetries(0);
+        second.getScheduler().setMaxRetries(0);
+        FakeTransport transport = new FakeTransport(url -> CompletableFuture.failedFuture(new IOException("down " + url)));
+        AiEndpointRouter router = AiEndpointRouter.of(AiEndpointRouter.Policy.LEAST_OUTSTANDING, first, second);
+
+        AiCallTrace trace = new AiCallTrace("Test");
+        CompletionException e = assertThrows(CompletionException.class, () -> send(router, transport, trace));
+
+        assertInstanceOf(IOException.class, e.getCause());
+        // 每个地址只尝试一次
+        assertEquals(1, transport.calls(first));
+        assertEquals(1, transport.calls(second));
+        assertEquals(1, trace.getFailovers());
+    }
+
+    @Test
+    void ewmaPrefersFasterEndpoint() {
+        AiEndpoint fast = endpoint("fast");
+        AiEndpoint slow = endpoint("slow");
+        FakeTransport transport = new FakeTransport(url -> url.equals(slow.getUrl())
+                ? CompletableFuture.supplyAsync(() -> 200, CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS))
+                : CompletableFuture.completedFuture(200));
+        AiEndpointRouter router = AiEndpointRouter.of(AiEndpointRouter.Policy.EWMA, fast, slow);
+
+        for (int i = 0; i < 20; i++) {
+            send(router, transport, null);
+        }
+
+        // 两个地址都有延迟样本后，慢地址只在冷启动时被选中
+        assertTrue(transport.calls(slow) <= 2, String.valueOf(transport.calls(slow)));
+        assertTrue(fast.getLatencyMillis() < slow.getLatencyMillis());
+        assertSame(fast, router.select(Set.of(), System.currentTimeMillis()));
+    }
+
+    @Test
+    void leastOutstandingSkipsBusyEndpoint() {
+        AiEndpoint busy = endpoint("busy");
+        AiEndpoint idle = endpoint("idle");
+        AiEndpointRouter router = AiEndpointRouter.of(AiEndpointRouter.Policy.LEAST_OUTSTANDING, busy, idle);
+        long now = System.currentTimeMillis();
+
+        assertTrue(busy.tryStart(now));
+        for (int i = 0; i < 10; i++) {
+            assertSame(idle, router.select(Set.of(), now));
+        }
+        busy.succeeded(0);
+    }
+
+    @Test
+    void halfOpenAllowsOneProbePerCooldown() throws InterruptedException {
+        AiEndpoint endpoint = endpoint("probe").setCircuitBreaker(1, Duration.ofMillis(50));
+        assertTrue(endpoint.tryStart(System.currentTimeMillis()));
+        endpoint.failed(0);
+        assertFalse(endpoint.tryStart(System.currentTimeMillis()));
+
+        Thread.sleep(60);
+        long now = System.currentTimeMillis();
+        assertTrue(endpoint.isAvailable(now));
+        assertTrue(endpoint.tryStart(now));
+        // 探测进行中，同一冷却期内的其他请求不再放行
+        assertFalse(endpoint.tryStart(now));
+        assertFalse(endpoint.isAvailable(now));
+
+        endpoint.succeeded(0);
+        assertFalse(endpoint.isOpen());
+        assertTrue(endpoint.tryStart(System.currentTimeMillis()));
+        endpoint.succeeded(0);
+    }
+
+    @Test
+    void concurrentRequestsClaimOneProbe() throws Exception {
+        AiEndpoint endpoint = endpoint("race").setCircuitBreaker(1, Duration.ofMinutes(1));
+        assertTrue(endpoint.tryStart(System.currentTimeMillis()));
+        endpoint.failed(0);
+        // 冷却期结束后的同一时刻，多个线程同时争抢探测名额
+        long now = System.currentTimeMillis() + Duration.ofMinutes(1).toMillis() + 1;
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch ready = new CountDownLatch(threads);
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Callable<Boolean> probe = () -> {
+                    ready.countDown();
+                    go.await();
+                    return endpoint.tryStart(now);
+                };
+                results.add(executor.submit(probe));
+            }
+            ready.await();
+            go.countDown();
+
+            int started = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(5, TimeUnit.SECONDS)) {
+                    started++;
+                }
+            }
+            assertEquals(1, started);
+            assertEquals(1, endpoint.getOutstanding());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void routerSendsOneProbeWhileHalfOpen() throws InterruptedException {
+        AiEndpoint endpoint = endpoint("half-open").setCircuitBreaker(1, Duration.ofMillis(200));
+        endpoint.getScheduler().setMaxRetries(0);
+        CompletableFuture<Integer> probe = new CompletableFuture<>();
+        AtomicInteger attempts = new AtomicInteger();
+        // 第一次失败使地址熔断，第二次是探测请求，由测试控制何时返回
+        FakeTransport transport = new FakeTransport(url -> switch (attempts.incrementAndGet()) {
+            case 1 -> CompletableFuture.failedFuture(new IOException("connection refused"));
+            case 2 -> probe;
+            default -> CompletableFuture.completedFuture(200);
+        });
+        AiEndpointRouter router = AiEndpointRouter.of(AiEndpointRouter.Policy.LEAST_OUTSTANDING, endpoint);
+        Function<AiEndpoint, HttpRequest> requests = e -> HttpRequest.newBuilder(URI.create(e.getUrl()))
+                .POST(HttpRequest.BodyPublishers.ofString("{}")).build();
+
+        assertThrows(CompletionException.class, () -> router.send(transport, requests, null).join());
+        assertTrue(endpoint.isOpen());
+        Thread.sleep(250);
+
+        CompletableFuture<HttpResponse<String>> first = router.send(transport, requests, null);
+        // 探测未返回前，其他请求不会发到该地址，唯一的地址不可用时快速失败
+        CompletionException rejected = assertThrows(CompletionException.class,
+                () -> router.send(transport, requests, null).join());
+        assertTrue(rejected.getCause().getMessage().startsWith("No available endpoint"), rejected.getCause().getMessage());
+        assertEquals(2, transport.calls(endpoint));
+
+        probe.complete(200);
+        assertEquals(200, first.join().statusCode());
+        assertFalse(endpoint.isOpen());
+        assertEquals(200, router.send(transport, requests, null).join().statusCode());
+        assertEquals(3, transport.calls(endpoint));
+    }
+}
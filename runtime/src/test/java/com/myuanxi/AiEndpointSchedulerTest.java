@@ -0,0 +1,255 @@
+package com.myuanxi;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AiEndpointSchedulerTest {
+
+    private static final AtomicInteger ENDPOINTS = new AtomicInteger();
+
+    private final AtomicLong time = new AtomicLong(1_000_000);
+
+    @AfterEach
+    void restoreClock() {
+        AiEndpointScheduler.setClock(System::currentTimeMillis);
+    }
+
+    // 调度器按地址全局共享，每个测试使用不同的地址
+    private static String endpoint() {
+        return "http://scheduler-test-" + ENDPOINTS.incrementAndGet() + "/v1/chat/completions";
+    }
+
+    private static HttpRequest request(String endpoint) {
+        return HttpRequest.newBuilder(URI.create(endpoint)).POST(HttpRequest.BodyPublishers.ofString("{}")).build();
+    }
+
+    private static HttpHeaders headers(String... nameValues) {
+        Map<String, List<String>> map = new HashMap<>();
+        for (int i = 0; i < nameValues.length; i += 2) {
+            map.put(nameValues[i], List.of(nameValues[i + 1]));
+        }
+        return HttpHeaders.of(map, (name, value) -> true);
+    }
+
+    // 第 n 次调用（从 1 开始）返回 responses.apply(n) 给出的响应，响应体为状态码
+    private static final class FakeTransport implements AiTransport {
+        private final IntFunction<CompletableFuture<Reply>> responses;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        FakeTransport(IntFunction<CompletableFuture<Reply>> responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+            return responses.apply(calls.incrementAndGet()).thenCompose(reply -> AiStubTransport.deliver(request, handler,
+                    reply.status, reply.headers, ByteBuffer.wrap(String.valueOf(reply.status).getBytes(StandardCharsets.UTF_8))));
+        }
+    }
+
+    private record Reply(int status, HttpHeaders headers) {
+    }
+
+    private static CompletableFuture<Reply> reply(int status, String... headers) {
+        return CompletableFuture.completedFuture(new Reply(status, headers(headers)));
+    }
+
+    private AiEndpointScheduler scheduler(String endpoint) {
+        AiEndpointScheduler.setClock(time::get);
+        return AiEndpointScheduler.forEndpoint(endpoint)
+                .setBackoff(Duration.ofMillis(1), Duration.ofMillis(1));
+    }
+
+    @Test
+    void parsesDurations() {
+        assertEquals(1000, AiEndpointScheduler.parseDurationMillis("1s"));
+        assertEquals(360_000, AiEndpointScheduler.parseDurationMillis("6m0s"));
+        assertEquals(120, AiEndpointScheduler.parseDurationMillis("120ms"));
+        assertEquals(1500, AiEndpointScheduler.parseDurationMillis("1.5s"));
+        assertEquals(3_723_000, AiEndpointScheduler.parseDurationMillis("1h2m3s"));
+        // 不足 1 毫秒向上取整
+        assertEquals(1, AiEndpointScheduler.parseDurationMillis("0.2ms"));
+        // 纯数字按秒处理，与 Retry-After 一致
+        assertEquals(2000, AiEndpointScheduler.parseDurationMillis(" 2 "));
+        assertEquals(0, AiEndpointScheduler.parseDurationMillis("soon"));
+    }
+
+    @Test
+    void retriesTransientStatuses() {
+        for (int status : new int[]{408, 429, 500, 502, 503, 504}) {
+            String endpoint = endpoint();
+            FakeTransport transport = new FakeTransport(n -> reply(n == 1 ? status : 200));
+            AiCallTrace trace = new AiCallTrace("Test");
+
+            HttpResponse<String> response = scheduler(endpoint).send(transport, request(endpoint), trace).join();
+
+            assertEquals(200, response.statusCode(), "status " + status);
+            assertEquals(2, transport.calls.get(), "status " + status);
+            assertEquals(1, trace.getRetries(), "status " + status);
+        }
+    }
+
+    @Test
+    void doesNotRetryOtherStatuses() {
+        for (int status : new int[]{200, 400, 401, 404, 422, 501}) {
+            String endpoint = endpoint();
+            FakeTransport transport = new FakeTransport(n -> reply(status));
+
+            HttpResponse<String> response = scheduler(endpoint).send(transport, request(endpoint)).join();
+
+            assertEquals(status, response.statusCode());
+            assertEquals(1, transport.calls.get(), "status " + status);
+        }
+    }
+
+    @Test
+    void returnsLastResponseAfterMaxRetries() {
+        String endpoint = endpoint();
+        FakeTransport transport = new FakeTransport(n -> reply(503));
+
+        HttpResponse<String> response = scheduler(endpoint).setMaxRetries(2).send(transport, request(endpoint)).join();
+
+        assertEquals(503, response.statusCode());
+        assertEquals(3, transport.calls.get());
+    }
+
+    @Test
+    void retriesIoErrorsOnly() {
+        String endpoint = endpoint();
+        FakeTransport transport = new FakeTransport(n -> n == 1
+                ? CompletableFuture.failedFuture(new IOException("connection reset"))
+                : reply(200));
+        assertEquals(200, scheduler(endpoint).send(transport, request(endpoint)).join().statusCode());
+        assertEquals(2, transport.calls.get());
+
+        String other = endpoint();
+        FakeTransport failing = new FakeTransport(n -> CompletableFuture.failedFuture(new IllegalStateException("bug")));
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> scheduler(other).send(failing, request(other)).join());
+        assertInstanceOf(IllegalStateException.class, AiEndpointScheduler.unwrap(e));
+        assertEquals(1, failing.calls.get());
+    }
+
+    @Test
+    void retryWaitsForRetryAfter() {
+        String endpoint = endpoint();
+        FakeTransport transport = new FakeTransport(n -> n == 1 ? reply(429, "retry-after-ms", "200") : reply(200));
+
+        long start = System.nanoTime();
+        HttpResponse<String> response = scheduler(endpoint).send(transport, request(endpoint)).join();
+
+        assertEquals(200, response.statusCode());
+        // 退避上限只有 1 毫秒，等待时间来自 retry-after-ms
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    void pausesUntilRateLimitReset() throws Exception {
+        String endpoint = endpoint();
+        FakeTransport transport = new FakeTransport(n -> n == 1
+                ? reply(200, "x-ratelimit-remaining-requests", "0", "x-ratelimit-reset-requests", "1m30s")
+                : reply(200));
+        AiEndpointScheduler scheduler = scheduler(endpoint);
+        scheduler.send(transport, request(endpoint)).join();
+
+        // 配额用完后下一个请求等到重置时间（时钟未前进，需要等待 90 秒）
+        CompletableFuture<HttpResponse<String>> paused = scheduler.send(transport, request(endpoint));
+        Thread.sleep(100);
+        assertFalse(paused.isDone());
+        assertEquals(1, transport.calls.get());
+        paused.cancel(true);
+
+        // 时钟越过重置时间后立即发送
+        time.addAndGet(90_000);
+        assertEquals(200, scheduler.send(transport, request(endpoint)).get(5, TimeUnit.SECONDS).statusCode());
+        assertEquals(2, transport.calls.get());
+    }
+
+    @Test
+    void hedgesOnlyAfterMinimumSamples() {
+        String endpoint = endpoint();
+        CompletableFuture<Reply> slow = CompletableFuture.supplyAsync(() -> new Reply(200, headers()),
+                CompletableFuture.delayedExecutor(300, TimeUnit.MILLISECONDS));
+        // 前 19 次立即返回，第 20 次很慢；只有 19 个样本，不发送对冲请求
+        FakeTransport transport = new FakeTransport(n -> n == 20 ? slow : reply(200));
+        AiEndpointScheduler scheduler = scheduler(endpoint).setHedging(true);
+        for (int i = 0; i < 19; i++) {
+            scheduler.send(transport, request(endpoint)).join();
+        }
+
+        AiCallTrace trace = new AiCallTrace("Test");
+        assertEquals(200, scheduler.send(transport, request(endpoint), trace).join().statusCode());
+
+        assertFalse(trace.isHedged());
+        assertEquals(20, transport.calls.get());
+    }
+
+    @Test
+    void hedgesSlowRequestAfterMinimumSamples() {
+        String endpoint = endpoint();
+        // 第 21 次的主请求一直不返回，只能由对冲请求完成
+        FakeTransport transport = new FakeTransport(n -> n == 21 ? new CompletableFuture<>() : reply(200));
+        AiEndpointScheduler scheduler = scheduler(endpoint).setHedging(true);
+        for (int i = 0; i < 20; i++) {
+            scheduler.send(transport, request(endpoint)).join();
+        }
+
+        AiCallTrace trace = new AiCallTrace("Test");
+        HttpResponse<String> response = scheduler.send(transport, request(endpoint), trace).orTimeout(5, TimeUnit.SECONDS).join();
+
+        assertEquals(200, response.statusCode());
+        assertTrue(trace.isHedged());
+        assertEquals(22, transport.calls.get());
+    }
+
+    @Test
+    void evictsIdleUnconfiguredSchedulers() {
+        AiEndpointScheduler.setClock(time::get);
+        String idle = endpoint();
+        String configured = endpoint();
+        String paused = endpoint();
+        AiEndpointScheduler idleScheduler = AiEndpointScheduler.forEndpoint(idle);
+        AiEndpointScheduler configuredScheduler = AiEndpointScheduler.forEndpoint(configured).setMaxRetries(1);
+        AiEndpointScheduler pausedScheduler = AiEndpointScheduler.forEndpoint(paused);
+        FakeTransport transport = new FakeTransport(n -> reply(200, "retry-after", "3600"));
+        pausedScheduler.send(transport, request(paused)).join();
+
+        // 未到空闲时间时，新增地址不会移除已有的调度器
+        time.addAndGet(TimeUnit.MINUTES.toMillis(5));
+        AiEndpointScheduler.forEndpoint(endpoint());
+        assertSame(idleScheduler, AiEndpointScheduler.forEndpoint(idle));
+
+        // 空闲超过 10 分钟后，下一次新增地址时移除；配置过的和仍在暂停中的保留
+        time.addAndGet(TimeUnit.MINUTES.toMillis(11));
+        AiEndpointScheduler.forEndpoint(endpoint());
+        assertNotSame(idleScheduler, AiEndpointScheduler.forEndpoint(idle));
+        assertSame(configuredScheduler, AiEndpointScheduler.forEndpoint(configured));
+        assertSame(pausedScheduler, AiEndpointScheduler.forEndpoint(paused));
+    }
+}
@@ -0,0 +1,115 @@
+package com.myuanxi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AiInputChunkerTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<String> split(String text, int maxChunkTokens, int overlapLines) throws IOException {
+        return AiInputChunker.split(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), maxChunkTokens, overlapLines);
+    }
+
+    private List<String> splitMapped(String text, long windowBytes, int maxChunkTokens, int overlapLines) throws IOException {
+        Path file = dir.resolve("input.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return AiInputChunker.splitMapped(channel, windowBytes, maxChunkTokens, overlapLines);
+        }
+    }
+
+    @Test
+    void splitsOnLineBoundariesWithinBudget() throws IOException {
+        // 每行 8 个 ASCII 字符，约 2 个 token，换行符不计入
+        String text = "line0001\nline0002\nline0003\nline0004\nline0005\n";
+
+        List<String> chunks = split(text, 4, 0);
+
+        assertEquals(List.of("line0001\nline0002\n", "line0003\nline0004\n", "line0005\n"), chunks);
+        assertEquals(text, String.join("", chunks));
+    }
+
+    @Test
+    void overlapsLines() throws IOException {
+        String text = "line0001\nline0002\nline0003\nline0004\n";
+
+        List<String> chunks = split(text, 4, 1);
+
+        assertEquals(List.of("line0001\nline0002\n", "line0002\nline0003\n", "line0003\nline0004\n"), chunks);
+    }
+
+    @Test
+    void keepsOverlongLineAsOwnChunk() throws IOException {
+        String text = "short\n" + "x".repeat(100) + "\nshort";
+
+        List<String> chunks = split(text, 5, 2);
+
+        assertEquals(List.of("short\n", "x".repeat(100) + "\n", "short"), chunks);
+    }
+
+    @Test
+    void countsMultiByteCharactersAsOneTokenEach() throws IOException {
+        List<String> chunks = split("张三李四\n王五赵六\n", 5, 0);
+
+        assertEquals(List.of("张三李四\n", "王五赵六\n"), chunks);
+    }
+
+    @Test
+    void skipsBlankChunks() throws IOException {
+        assertEquals(List.of("a\n"), split("a\n" + " ".repeat(40) + "\n\n", 5, 0));
+        assertTrue(split("", 5, 0).isEmpty());
+    }
+
+    @Test
+    void windowsMatchSingleBuffer() throws IOException {
+        Random random = new Random(7);
+        String[] words = {"alpha", "张三", "工程师", "x", "😀", "data-point", ""};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            int count = random.nextInt(6);
+            for (int j = 0; j < count; j++) {
+                text.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            text.append('\n');
+        }
+        text.append("no trailing newline 结尾");
+
+        // 窗口边界落在多字节字符、换行符和重叠的行中间时，结果都与整体切分一致
+        for (int overlap : new int[]{0, 2}) {
+            List<String> expected = split(text.toString(), 20, overlap);
+            for (long window : new long[]{1, 3, 7, 64, 1000, 1L << 20}) {
+                assertEquals(expected, splitMapped(text.toString(), window, 20, overlap), "window " + window + ", overlap " + overlap);
+            }
+        }
+    }
+
+    @Test
+    void splitsFileAboveMappedThreshold() throws IOException {
+        Path file = dir.resolve("large.txt");
+        String line = "第" + "一二三四五六七八九十".repeat(3) + " sample line\n";
+        String text = line.repeat((int) (AiInputChunker.MAPPED_THRESHOLD_BYTES / line.getBytes(StandardCharsets.UTF_8).length) + 10);
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+
+        List<String> chunks = AiInputChunker.split(file, AiInputChunker.DEFAULT_MAX_CHUNK_TOKENS, 0);
+
+        assertEquals(text, String.join("", chunks));
+        for (String chunk : chunks) {
+            assertTrue(AiInputChunker.estimateTokens(chunk) <= AiInputChunker.DEFAULT_MAX_CHUNK_TOKENS);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.myuanxi;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AiJsonArraySplitterTest {
+
+    // 逐字符输入，模拟最碎的 SSE 增量
+    private static List<String> split(String json) {
+        AiJsonArraySplitter splitter = new AiJsonArraySplitter();
+        List<String> elements = new ArrayList<>();
+        for (int i = 0; i < json.length(); i++) {
+            elements.addAll(splitter.feed(json.substring(i, i + 1)));
+        }
+        elements.addAll(splitter.finish());
+        return elements;
+    }
+
+    @Test
+    void wrapperObject() {
+        assertEquals(List.of("{\"name\":\"a\"}", "{\"name\":\"b\"}"),
+                split("{\"items\":[{\"name\":\"a\"},{\"name\":\"b\"}]}"));
+    }
+
+    @Test
+    void bareArray() {
+        assertEquals(List.of("{\"name\":\"a\"}", "{\"name\":\"b\"}"),
+                split(" [{\"name\":\"a\"}, {\"name\":\"b\"}]"));
+    }
+
+    @Test
+    void singleObject() {
+        String json = "{\"name\":\"a\",\"age\":3}";
+        assertEquals(List.of(json), split(json));
+    }
+
+    @Test
+    void singleObjectWithListOfObjectsField() {
+        String json = "{\"name\":\"a\",\"friends\":[{\"name\":\"b\"},{\"name\":\"c\"}]}";
+        assertEquals(List.of(json), split(json));
+    }
+
+    @Test
+    void scalarArrayBeforeWrapper() {
+        assertEquals(List.of("{\"name\":\"a\"}"),
+                split("{\"tags\":[\"x\",\"y\"],\"items\":[{\"name\":\"a\"}]}"));
+    }
+
+    @Test
+    void otherArrayOfObjectsBeforeWrapper() {
+        assertEquals(List.of("{\"name\":\"a\"}"),
+                split("{\"meta\":[{\"name\":\"m\"}],\"items\":[{\"name\":\"a\"}]}"));
+    }
+
+    @Test
+    void scalarElementsAreSkipped() {
+        assertEquals(List.of("{\"name\":\"a\"}"), split("{\"items\":[1,\"x\",{\"name\":\"a\"},null]}"));
+        assertEquals(List.of(), split("[\"a\",\"b\"]"));
+    }
+
+    @Test
+    void bracketsInsideStrings() {
+        assertEquals(List.of("{\"name\":\"[{]}\\\"\"}"),
+                split("{\"items\":[{\"name\":\"[{]}\\\"\"}]}"));
+    }
+
+    @Test
+    void nestedArraysInsideElements() {
+        assertEquals(List.of("{\"name\":\"a\",\"friends\":[{\"name\":\"b\"}]}"),
+                split("{\"items\":[{\"name\":\"a\",\"friends\":[{\"name\":\"b\"}]}]}"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AiJsonPayloadTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static String escape(String text) {
+        byte[] out = new byte[AiJsonPayload.escapedLength(text)];
+        int end = AiJsonPayload.writeEscaped(text, out, 0);
+        // 预先计算的长度与实际写入的字节数一致
+        assertEquals(out.length, end);
+        return new String(out, StandardCharsets.UTF_8);
+    }
+
+    // 拼成 JSON 字符串后由 Jackson 解析，应当还原出原文
+    private static String roundTrip(String text) throws IOException {
+        return MAPPER.readValue(AiJsonPayload.build(AiJsonPayload.utf8("\""), text, AiJsonPayload.utf8("\"")), String.class);
+    }
+
+    @Test
+    void escapesQuotesAndBackslashes() {
+        assertEquals("say \\\"hi\\\"", escape("say \"hi\""));
+        assertEquals("C:\\\\path\\\\to", escape("C:\\path\\to"));
+        assertEquals("\\\\\\\"", escape("\\\""));
+        // 斜杠不需要转义
+        assertEquals("a/b", escape("a/b"));
+    }
+
+    @Test
+    void escapesControlCharacters() {
+        assertEquals("\\b\\f\\n\\r\\t", escape("\b\f\n\r\t"));
+        assertEquals("\\u0000\\u0001\\u001f", escape("\u0000\u0001\u001f"));
+        assertEquals("\\u000b", escape("\u000b"));
+        // 0x7f 不是 JSON 的控制字符，原样输出
+        assertEquals("\u007f", escape("\u007f"));
+    }
+
+    @Test
+    void encodesMultiByteCharacters() {
+        assertArrayEquals("é张三".getBytes(StandardCharsets.UTF_8), AiJsonPayload.build(new byte[0], "é张三", new byte[0]));
+        assertEquals(2 + 3 + 3, AiJsonPayload.escapedLength("é张三"));
+    }
+
+    @Test
+    void encodesSurrogatePairs() throws IOException {
+        String emoji = "😀𝄞";
+        assertEquals(8, AiJsonPayload.escapedLength(emoji));
+        assertArrayEquals(emoji.getBytes(StandardCharsets.UTF_8), AiJsonPayload.build(new byte[0], emoji, new byte[0]));
+        assertEquals("a😀\"b", roundTrip("a😀\"b"));
+    }
+
+    @Test
+    void replacesLoneSurrogates() {
+        // 与 String.getBytes 一致，不成对的代理字符替换为 '?'
+        for (String text : new String[]{"\ud83d", "x\ude00y", "\ude00\ud83d", "\ud83d\ud83d\ude00"}) {
+            assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), AiJsonPayload.build(new byte[0], text, new byte[0]), text);
+        }
+    }
+
+    @Test
+    void writesBetweenPrefixAndSuffix() {
+        byte[] payload = AiJsonPayload.build(AiJsonPayload.utf8("{\"content\":\""), "第\n1\"行", AiJsonPayload.utf8("\"}"));
+
+        assertEquals("{\"content\":\"第\\n1\\\"行\"}", new String(payload, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void randomTextRoundTrips() throws IOException {
+        Random random = new Random(42);
+        char[] pool = {'a', 'Z', '0', ' ', '"', '\\', '/', '\n', '\r', '\t', '\b', '\f', '\u0000', '\u001f', '\u007f',
+                'é', 'ß', '张', '\u2028', '\uffff', '\ud83d', '\ude00'};
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                text.append(pool[random.nextInt(pool.length)]);
+            }
+            // 不成对的代理字符会被替换，按 String.getBytes 的结果比较
+            String expected = new String(text.toString().getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+            assertEquals(expected, roundTrip(text.toString()), () -> "input " + text.toString().chars().boxed().toList());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.myuanxi;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AiJsonReadersTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // 与 AiJsonArraySplitterTest 使用相同的输入，两条路径的结果应当一致
+    private static List<String> readArray(String json) throws IOException {
+        try (JsonParser parser = MAPPER.createParser(json)) {
+            List<String> elements = new ArrayList<>();
+            for (Object element : AiJsonReaders.readArray(parser, MAPPER::readTree)) {
+                elements.add(element.toString());
+            }
+            return elements;
+        }
+    }
+
+    @Test
+    void wrapperObject() throws IOException {
+        assertEquals(List.of("{\"name\":\"a\"}", "{\"name\":\"b\"}"),
+                readArray("{\"items\":[{\"name\":\"a\"},{\"name\":\"b\"}]}"));
+    }
+
+    @Test
+    void bareArray() throws IOException {
+        assertEquals(List.of("{\"name\":\"a\"}", "{\"name\":\"b\"}"),
+                readArray(" [{\"name\":\"a\"}, {\"name\":\"b\"}]"));
+    }
+
+    @Test
+    void singleObject() throws IOException {
+        String json = "{\"name\":\"a\",\"age\":3}";
+        assertEquals(List.of(json), readArray(json));
+    }
+
+    @Test
+    void singleObjectWithListOfObjectsField() throws IOException {
+        String json = "{\"id\":1,\"name\":\"a\",\"friends\":[{\"name\":\"b\"}]}";
+        assertEquals(List.of(json), readArray(json));
+    }
+
+    @Test
+    void scalarArrayBeforeWrapper() throws IOException {
+        assertEquals(List.of("{\"name\":\"a\"}"),
+                readArray("{\"tags\":[\"x\"],\"items\":[{\"name\":\"a\"}]}"));
+    }
+
+    @Test
+    void otherArrayOfObjectsBeforeWrapper() throws IOException {
+        assertEquals(List.of("{\"name\":\"a\"}"),
+                readArray("{\"meta\":[{\"name\":\"m\"}],\"items\":[{\"name\":\"a\"}]}"));
+    }
+
+    @Test
+    void scalarElementsAreSkipped() throws IOException {
+        assertEquals(List.of("{\"name\":\"a\"}"), readArray("{\"items\":[1,\"x\",{\"name\":\"a\"},null]}"));
+        assertEquals(List.of(), readArray("[\"a\",\"b\"]"));
+    }
+
+    @Test
+    void nonArrayWrapperKeyIsAnEntityField() throws IOException {
+        String json = "{\"items\":\"none\",\"name\":\"a\"}";
+        assertEquals(List.of(json), readArray(json));
+    }
+}
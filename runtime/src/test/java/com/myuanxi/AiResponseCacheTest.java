@@ -0,0 +1,224 @@
+package com.myuanxi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AiResponseCacheTest {
+
+    // 记录头：32 字节 key + 8 字节写入时间 + 4 字节长度
+    private static final int HEADER_BYTES = 44;
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private static String key(int n) {
+        return AiResponseCache.key("model", "http://host", "prompt", "input " + n, 0.7);
+    }
+
+    private String load(AiResponseCache cache, String key, String value) {
+        return cache.get(key, () -> {
+            loads.incrementAndGet();
+            return value;
+        });
+    }
+
+    @Test
+    void recordsSurviveReopen() {
+        Path file = dir.resolve("cache.bin");
+        try (AiResponseCache cache = new AiResponseCache(10, null, file)) {
+            load(cache, key(1), "{\"name\":\"张三\"}");
+            load(cache, key(2), "second");
+            assertEquals(2 * HEADER_BYTES + "{\"name\":\"张三\"}".getBytes(StandardCharsets.UTF_8).length + 6, cache.getDiskBytes());
+        }
+        try (AiResponseCache cache = new AiResponseCache(10, null, file)) {
+            assertEquals("{\"name\":\"张三\"}", load(cache, key(1), "reloaded"));
+            assertEquals("second", load(cache, key(2), "reloaded"));
+            assertEquals(2, cache.getDiskHits());
+        }
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void laterRecordForSameKeyWins() {
+        Path file = dir.resolve("cache.bin");
+        try (AiResponseCache cache = new AiResponseCache(10, null, file)) {
+            load(cache, key(1), "old");
+        }
+        try (AiResponseCache cache = new AiResponseCache(10, null, file)) {
+            // 内存中没有，磁盘命中旧值；清空内存后再写入新值
+            cache.clear();
+            assertEquals("old", load(cache, key(1), "unused"));
+        }
+        Path other = dir.resolve("other.bin");
+        try (AiResponseCache cache = new AiResponseCache(10, Duration.ofMillis(1), other)) {
+            load(cache, key(1), "v1");
+            sleep(5);
+            load(cache, key(1), "v2");
+        }
+        try (AiResponseCache cache = new AiResponseCache(10, null, other)) {
+            assertEquals("v2", load(cache, key(1), "unused"));
+        }
+    }
+
+    @Test
+    void truncatedTailIsDropped() throws IOException {
+        Path file = dir.resolve("cache.bin");
+        long valid;
+        try (AiResponseCache cache = new AiResponseCache(10, null, file)) {
+            load(cache, key(1), "first");
+            load(cache, key(2), "second");
+            valid = cache.getDiskBytes();
+        }
+        // 异常退出时写了一半的记录：完整的头部，但内容比声明的长度短
+        ByteBuffer partial = ByteBuffer.allocate(HEADER_BYTES + 3);
+        partial.put(new byte[32]).putLong(System.currentTimeMillis()).putInt(100).put("abc".getBytes(StandardCharsets.UTF_8)).flip();
+        Files.write(file, partial.array(), StandardOpenOption.APPEND);
+
+        try (AiResponseCache cache = new AiResponseCache(10, null, file)) {
+            assertEquals(valid, Files.size(file));
+            assertEquals("first", load(cache, key(1), "unused"));
+            assertEquals("second", load(cache, key(2), "unused"));
+            // 截断后追加的记录在下次启动时仍然可读
+            load(cache, key(3), "third");
+        }
+        // 只有半个头部
+        Files.write(file, new byte[HEADER_BYTES / 2], StandardOpenOption.APPEND);
+        try (AiResponseCache cache = new AiResponseCache(10, null, file)) {
+            assertEquals("third", load(cache, key(3), "unused"));
+        }
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void scanAndReadWithoutMapping() throws IOException {
+        // mapLimitBytes 为 0 时走超过 2GB 的文件使用的路径：不映射，按位置读取建立索引和读取内容
+        Path file = dir.resolve("cache.bin");
+        try (AiResponseCache cache = new AiResponseCache(10, null, file)) {
+            for (int i = 0; i < 5; i++) {
+                load(cache, key(i), "value " + i);
+            }
+        }
+        long valid = Files.size(file);
+        Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        try (AiResponseCache cache = new AiResponseCache(10, null, file, Long.MAX_VALUE, 0)) {
+            assertEquals(valid, Files.size(file));
+            for (int i = 0; i < 5; i++) {
+                assertEquals("value " + i, load(cache, key(i), "unused"));
+            }
+            assertEquals(5, cache.getDiskHits());
+        }
+    }
+
+    @Test
+    void expiredEntriesAreReloaded() {
+        Path file = dir.resolve("cache.bin");
+        try (AiResponseCache cache = new AiResponseCache(10, Duration.ofMillis(50), file)) {
+            load(cache, key(1), "v1");
+            assertEquals("v1", load(cache, key(1), "unused"));
+            sleep(100);
+            assertEquals("v2", load(cache, key(1), "v2"));
+        }
+        sleep(100);
+        // 磁盘上的记录同样按写入时间过期
+        try (AiResponseCache cache = new AiResponseCache(10, Duration.ofMillis(50), file)) {
+            assertEquals("v3", load(cache, key(1), "v3"));
+            assertEquals(0, cache.getDiskHits());
+        }
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void concurrentRequestsCollapse() {
+        AiResponseCache cache = new AiResponseCache(10, null);
+        CompletableFuture<String> response = new CompletableFuture<>();
+        CompletableFuture<String> first = cache.getAsync(key(1), () -> {
+            loads.incrementAndGet();
+            return response;
+        });
+        CompletableFuture<String> second = cache.getAsync(key(1), () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("duplicate");
+        });
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        response.complete("value");
+        assertEquals("value", first.join());
+        assertEquals("value", second.join());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getCollapsed());
+        assertEquals(1, cache.getMisses());
+        // 完成后走缓存，不再合并
+        assertEquals("value", cache.getAsync(key(1), CompletableFuture::new).join());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        AiResponseCache cache = new AiResponseCache(10, null);
+        assertThrows(IllegalStateException.class, () -> cache.get(key(1), () -> "bad", value -> {
+            throw new IllegalStateException("parse");
+        }, value -> true));
+        assertNull(cache.get(key(2), () -> "invalid", value -> null, value -> false));
+        assertEquals(0, cache.size());
+        assertEquals("ok", cache.get(key(1), () -> "ok"));
+    }
+
+    @Test
+    void diskFileIsCompacted() throws IOException {
+        Path file = dir.resolve("cache.bin");
+        String value = "x".repeat(100);
+        long recordBytes = HEADER_BYTES + value.length();
+        long maxBytes = recordBytes * 10;
+        // 同一个 key 过期后反复写入，压缩后只保留最新的记录
+        try (AiResponseCache cache = new AiResponseCache(1, Duration.ofMillis(1), dir.resolve("same.bin"), maxBytes)) {
+            for (int i = 0; i < 20; i++) {
+                load(cache, key(0), value);
+                sleep(3);
+            }
+            assertTrue(cache.getCompactions() > 0);
+            assertTrue(cache.getDiskBytes() <= maxBytes);
+        }
+
+        try (AiResponseCache cache = new AiResponseCache(1, null, file, maxBytes)) {
+            for (int i = 1; i <= 30; i++) {
+                load(cache, key(i), value);
+                sleep(1);
+                assertTrue(Files.size(file) <= maxBytes, "file size " + Files.size(file));
+            }
+        }
+        assertFalse(Files.exists(dir.resolve("cache.bin.compact")));
+        try (AiResponseCache cache = new AiResponseCache(1, null, file, maxBytes)) {
+            // 最新的记录保留，最旧的记录被丢弃
+            assertEquals(value, load(cache, key(30), "reloaded"));
+            assertEquals("reloaded", load(cache, key(1), "reloaded"));
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+}